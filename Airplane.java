@@ -10,6 +10,7 @@ public class Airplane {
     private double fuelBurnRate;
     private double airspeed;
     private int key;
+    private int requiredFuelMask;
 
     /**
      * Constructs an Airplane with the specified attributes.
@@ -83,6 +84,7 @@ public class Airplane {
      */
     private void setType(int newType) {
         type = newType;
+        requiredFuelMask = getRequiredFuel().mask();
     }
 
     /**
@@ -139,6 +141,66 @@ public class Airplane {
         airspeed = newAirspeed;
     }
 
+    /**
+     * Returns the longest distance the airplane can fly on one full tank.
+     *
+     * @return The range in nautical miles, or infinity if the airplane burns no fuel.
+     */
+    public double getRange() {
+        if (fuelBurnRate <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return tankSize / fuelBurnRate * airspeed;
+    }
+
+    /**
+     * Returns the fuel the airplane needs, AVGAS for prop planes and Jet A for the rest.
+     *
+     * @return The required fuel type.
+     */
+    public FuelType getRequiredFuel() {
+        return (type == 3) ? FuelType.AVGAS : FuelType.JET_A;
+    }
+
+    /**
+     * Returns the name of the fuel type the airplane needs, AVGAS for prop planes and JA-a for the rest.
+     *
+     * @return The name of the required fuel type.
+     */
+    public String getRequiredFuelType() {
+        return getRequiredFuel().getName();
+    }
+
+    /**
+     * Returns the fuel mask of the fuel the airplane needs (see FuelType).
+     *
+     * @return The required fuel mask.
+     */
+    public int getRequiredFuelMask() {
+        return requiredFuelMask;
+    }
+
+    /**
+     * Returns whether the airplane can refuel at the given airport.
+     *
+     * @param airport The airport to check.
+     * @return true if the airport sells the fuel type the airplane needs.
+     */
+    public boolean canRefuelAt(Airport airport) {
+        return (airport.getFuelMask() & requiredFuelMask) != 0;
+    }
+
+    /**
+     * Returns the fuel needed to fly the given distance.
+     *
+     * @param distance The distance in nautical miles.
+     * @return The fuel required in gallons.
+     */
+    public double getFuelRequired(double distance) {
+        double flightTimeHours = distance / airspeed;
+        return flightTimeHours * fuelBurnRate;
+    }
+
     /**
      * Returns a CSV formatted string representing the airplane's attributes.
      *
@@ -0,0 +1,32 @@
+/**
+ * Receives the changes an AirplaneManager makes to its fleet, so that data derived
+ * from the airplanes can be kept up to date.
+ */
+public interface AirplaneListener {
+
+    /**
+     * Called after an airplane has been added.
+     *
+     * @param airplane The new airplane, with the key it was given.
+     */
+    void airplaneAdded(Airplane airplane);
+
+    /**
+     * Called after an airplane has been deleted.
+     *
+     * @param airplane The deleted airplane.
+     */
+    void airplaneDeleted(Airplane airplane);
+
+    /**
+     * Called after an airplane has been replaced by an edited copy with the same key.
+     * By default this is handled as a deletion followed by an addition.
+     *
+     * @param oldAirplane The airplane that was replaced.
+     * @param newAirplane The airplane that replaced it.
+     */
+    default void airplaneEdited(Airplane oldAirplane, Airplane newAirplane) {
+        airplaneDeleted(oldAirplane);
+        airplaneAdded(newAirplane);
+    }
+}
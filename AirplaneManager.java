@@ -4,46 +4,55 @@ import java.util.*;
 /**
  * Manages a collection of Airplane objects, providing methods for loading, saving, 
  * adding, deleting, and editing airplanes in a CSV file.
+ * Airplanes are kept in a hash map by key, in the order they were added. Keys are stable:
+ * new airplanes are given the next key after the highest one ever loaded or added, and
+ * deleting an airplane does not change the keys of the others. The next key is kept in
+ * the journal, so the key of a deleted airplane is not given out again after a restart.
  */
 public class AirplaneManager {
     
-    private ArrayList<Airplane> airplanes;
+    private LinkedHashMap<Integer, Airplane> airplanes;
+    private ArrayList<Airplane> airplaneList; // The airplanes in order, rebuilt after a change
+    private int nextKey;
+    private double maxRange = -1; // -1 when it has to be calculated again
+    private final ArrayList<AirplaneListener> listeners = new ArrayList<>();
+    private final MutationJournal<Airplane> journal =
+            new MutationJournal<>(new File("Airplanes.csv"), AirplaneManager::parseAirplane, Airplane::toCSV);
 
     /**
      * Constructs an AirplaneManager object and loads airplanes from a CSV file.
      * If loading fails, it attempts to load from a backup temporary CSV file.
+     * The changes recorded in the journal of the file are then applied.
      */
     public AirplaneManager() {
-        airplanes = new ArrayList<>();
+        airplanes = new LinkedHashMap<>();
+        MutationJournal.awaitWrites();
         // In case we can't load from the main file, load from the temporary backup
         if (!loadAirplanesFromCSV("Airplanes.csv")){
             loadAirplanesFromCSV("Airplanes.csv.tmp");
         }
+        replayJournal();
     }
 
     /**
-     * Loads a list of airplanes from the specified CSV file.
+     * Loads a list of airplanes from the specified CSV file. The file may be compressed
+     * with gzip, and large files are parsed in parallel chunks by CsvParser. The binary
+     * snapshot of the file is used instead when it is up to date, and written when it is not.
      *
      * @param fileName The name of the file to load the airplanes from.
      * @return true if loading was successful, false otherwise.
      */
     private boolean loadAirplanesFromCSV(String fileName) {
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6) { // 6 columns (key,makeAndModel,type,tankSize,fuelBurnRate,airspeed)
-                    int key = Integer.parseInt(parts[0].trim());
-                    String makeAndModel = parts[1].trim(); 
-                    int type = Integer.parseInt(parts[2].trim());
-                    double tankSize = Double.parseDouble(parts[3].trim());
-                    double fuelBurnRate = Double.parseDouble(parts[4].trim());
-                    double airspeed = Double.parseDouble(parts[5].trim());
-        
-                    Airplane airplane = new Airplane(key, makeAndModel, type, tankSize, fuelBurnRate, airspeed);
-                    airplanes.add(airplane);
-                }
-            }
+        File file = new File(fileName);
+        ArrayList<Airplane> snapshot = DatabaseSnapshot.loadAirplanes(file);
+        if (snapshot != null) {
+            putAll(snapshot);
+            return true;
+        }
+        try {
+            ArrayList<Airplane> parsed = CsvParser.parse(file, AirplaneManager::parseAirplane);
+            putAll(parsed);
+            saveSnapshot(file, parsed);
             return true;
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
@@ -52,39 +61,155 @@ public class AirplaneManager {
     }
 
     /**
-     * Saves the current list of airplanes to the specified CSV file.
-     * A temporary file is created first, then the main file is overwritten with the saved data.
+     * Adds loaded airplanes to the map. Should the file hold a key more than once, the
+     * first airplane with it is kept.
+     *
+     * @param loaded The airplanes in the order of the file.
+     */
+    private void putAll(ArrayList<Airplane> loaded) {
+        for (Airplane airplane : loaded) {
+            airplanes.putIfAbsent(airplane.getKey(), airplane);
+            useKey(airplane.getKey());
+        }
+        airplaneList = null;
+    }
+
+    /**
+     * Makes sure a key is never given to a new airplane.
+     *
+     * @param key A key that is or was in use.
+     */
+    private void useKey(int key) {
+        nextKey = Math.max(nextKey, key + 1);
+    }
+
+    /**
+     * Creates an airplane from a row of the airplanes file.
+     *
+     * @param row The row, with the key, make and model, type, tank size, fuel burn rate and airspeed.
+     * @return The airplane, or null if the row has fewer than 6 columns.
+     */
+    private static Airplane parseAirplane(CsvRow row) {
+        if (row.getFieldCount() < 6) {
+            return null;
+        }
+        int key = row.getInt(0);
+        String makeAndModel = row.getString(1);
+        int type = row.getInt(2);
+        double tankSize = row.getDouble(3);
+        double fuelBurnRate = row.getDouble(4);
+        double airspeed = row.getDouble(5);
+
+        return new Airplane(key, makeAndModel, type, tankSize, fuelBurnRate, airspeed);
+    }
+
+    /**
+     * Writes the binary snapshot of a CSV file that holds the current airplanes, so that the
+     * next load does not have to parse the file.
+     *
+     * @param file The CSV file the airplanes were loaded from or saved to.
+     * @param airplanesToSave The airplanes the file holds.
+     */
+    private void saveSnapshot(File file, ArrayList<Airplane> airplanesToSave) {
+        try {
+            DatabaseSnapshot.saveAirplanes(file, airplanesToSave);
+        } catch (IOException e) {
+            System.out.println("Could not save snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves a list of airplanes to the specified CSV file.
+     * A temporary file is written first, which the journal then moves over the main file
+     * in one atomic step, starting itself again for the new file.
      *
      * @param fileName The name of the file to save the airplanes to.
+     * @param airplanesToSave The airplanes to save.
+     * @param mark The mark of the journal taken together with the copy of the airplanes.
+     * @return true if the file was written completely, false otherwise.
      */
-    private void saveAirplanesToCSV(String fileName) {
+    private boolean saveAirplanesToCSV(String fileName, ArrayList<Airplane> airplanesToSave, long mark) {
+        File fileToWrite = new File(fileName);
         File tempFile = new File(fileName + ".tmp");
         for(int i = 0; i < 3; i++) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
-                for (Airplane airplane : airplanes) {
-                    bw.write(airplane.toCSV());
-                    bw.newLine();
+            try {
+                try (BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
+                    for (Airplane airplane : airplanesToSave) {
+                        bw.write(airplane.toCSV());
+                        bw.newLine();
+                    }
                 }
-                break;
-            } catch (IOException e) {
-                System.out.println("Error writing to .tmp file, " + "Attempt: " + i);
-                e.printStackTrace();
-            }
-        }
-        
-        File fileToWrite = new File(fileName);
-        for(int i = 0; i < 3; i++) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(fileToWrite))) {
-                for (Airplane airplane : airplanes) {
-                    bw.write(airplane.toCSV());
-                    bw.newLine();
+                // The journal moves the complete file over the old one in one step, so it is never seen half written
+                if (!journal.replaceBase(tempFile, mark)) {
+                    return false; // A newer copy of the list has been saved already
                 }
-                break;
+                saveSnapshot(fileToWrite, airplanesToSave);
+                return true;
             } catch (IOException e) {
                 System.out.println("Error writing to .csv file, " + "Attempt: " + i);
                 e.printStackTrace();
             }
         }
+        return false;
+    }
+
+    /**
+     * Applies the changes recorded in the journal since the CSV file was last written.
+     * Keys of deleted airplanes are counted as used, as is every key below the next key
+     * the journal recorded, so they are not given out again.
+     */
+    private void replayJournal() {
+        ArrayList<MutationJournal.Record<Airplane>> records = journal.read();
+        nextKey = Math.max(nextKey, (int) journal.getNextKey());
+        for (MutationJournal.Record<Airplane> record : records) {
+            int key = Integer.parseInt(record.getKey());
+            useKey(key);
+            switch (record.getOperation()) {
+                case ADD:
+                case EDIT:
+                    airplanes.put(key, record.getItem());
+                    break;
+                case DELETE:
+                    airplanes.remove(key);
+                    break;
+            }
+        }
+        airplaneList = null;
+        journal.setNextKey(nextKey);
+    }
+
+    /**
+     * Records a change in the journal instead of rewriting the CSV file, and compacts the
+     * journal into the file in the background once it has grown large. If the journal
+     * cannot be written, the whole file is saved instead.
+     *
+     * @param operation The kind of change.
+     * @param key The key of the airplane the change applies to.
+     * @param airplane The new airplane, or null for a delete.
+     */
+    private void recordChange(MutationJournal.Operation operation, int key, Airplane airplane) {
+        try {
+            journal.append(operation, String.valueOf(key), airplane);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal, saving the whole file: " + e.getMessage());
+            saveInBackground();
+            MutationJournal.awaitWrites();
+            return;
+        }
+        if (journal.needsCompaction()) {
+            saveInBackground();
+        }
+    }
+
+    /**
+     * Writes the whole list of airplanes to the CSV file on the background thread, which
+     * also starts the journal again for the new file.
+     */
+    private void saveInBackground() {
+        // The background write works on a copy, as the map keeps changing
+        ArrayList<Airplane> airplanesToSave = new ArrayList<>(airplanes.values());
+        long mark = journal.mark();
+        journal.compact(() -> saveAirplanesToCSV("Airplanes.csv", airplanesToSave, mark));
     }
 
     /**
@@ -94,63 +219,164 @@ public class AirplaneManager {
      * @return true if the airplane exists, false otherwise.
      */
     private boolean exists(Airplane airplane) {
-        return airplanes.contains(airplane);
+        return airplane != null && airplanes.get(airplane.getKey()) == airplane;
+    }
+
+    /**
+     * Returns the airplane with the given key.
+     *
+     * @param key The key of the airplane.
+     * @return The airplane, or null if there is none with the key.
+     */
+    public Airplane getAirplane(int key) {
+        return airplanes.get(key);
+    }
+
+    /**
+     * Returns the key the next airplane added to the collection will be given.
+     *
+     * @return The next free key.
+     */
+    public int getNextKey() {
+        return nextKey;
     }
 
     /**
-     * Adds an airplane to the collection if it does not already exist.
+     * Adds an airplane to the collection if it does not already exist. The airplane is
+     * given the next free key, which it keeps for as long as it is in the collection.
      *
      * @param airplane The airplane to add.
      */
     public void addAirplane(Airplane airplane) {
         if (!exists(airplane)) {
-            airplanes.add(airplane);
-            saveAirplanesToCSV("Airplanes.csv");  // Save to CSV after adding
+            airplane.setKey(nextKey++);
+            journal.setNextKey(nextKey);
+            airplanes.put(airplane.getKey(), airplane);
+            airplaneList = null;
+            if (maxRange >= 0) {
+                maxRange = Math.max(maxRange, airplane.getRange());
+            }
+            for (AirplaneListener listener : listeners) {
+                listener.airplaneAdded(airplane);
+            }
+            recordChange(MutationJournal.Operation.ADD, airplane.getKey(), airplane);
         } else {
             System.out.println("Could not add Airplane, Airplane already exists");
         }
     }
 
     /**
-     * Returns the list of all airplanes managed by this class.
+     * Sets whether changes to the airplanes are queued and written to the journal by a
+     * background thread, a batch at a time, instead of before each change returns.
+     * Queued changes are written by flush, before any manager loads the file, and when
+     * the program shuts down.
+     *
+     * @param writeBehind true to queue changes.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        journal.setWriteBehind(writeBehind);
+    }
+
+    /**
+     * Writes every queued change to the airplanes to the journal.
+     */
+    public void flush() {
+        journal.flush();
+    }
+
+    /**
+     * Registers a listener that is told about every airplane that is added, edited or deleted.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(AirplaneListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the list of all airplanes managed by this class, in the order they were added.
+     * The list is built on the first call after a change and should not be modified.
      *
      * @return The list of airplanes.
      */
     public ArrayList<Airplane> getAirplanes() {
-        return airplanes;
+        if (airplaneList == null) {
+            airplaneList = new ArrayList<>(airplanes.values());
+        }
+        return airplaneList;
+    }
+
+    /**
+     * Returns the longest range of any airplane in the collection, which bounds
+     * the length of any leg the fleet can fly. The range is kept up to date as airplanes
+     * are added, and only calculated again after the airplane with the longest range
+     * is edited or deleted.
+     *
+     * @return The fleet's maximum range in nautical miles, or 0 if there are no airplanes.
+     */
+    public double getMaxRange() {
+        if (maxRange < 0) {
+            maxRange = 0;
+            for (Airplane airplane : airplanes.values()) {
+                maxRange = Math.max(maxRange, airplane.getRange());
+            }
+        }
+        return maxRange;
+    }
+
+    /**
+     * Marks the maximum range for calculating again if it may have belonged to an
+     * airplane that is being removed or replaced.
+     *
+     * @param airplane The airplane leaving the collection.
+     */
+    private void forgetRange(Airplane airplane) {
+        if (airplane.getRange() >= maxRange) {
+            maxRange = -1;
+        }
     }
 
     /**
-     * Deletes the specified airplane from the collection and adjusts the keys of the remaining airplanes.
+     * Deletes the specified airplane from the collection. The keys of the remaining
+     * airplanes are left as they are, and the deleted key is not given out again.
      *
      * @param airplane The airplane to delete.
      */
     public void deleteAirplane(Airplane airplane) {
         if (exists(airplane)) {
-            int index = airplanes.indexOf(airplane); 
-            airplanes.remove(index); 
-            
-            // Shifting / adjusting keys to fit with their new index in the ArrayList
-            for (int i = index; i < airplanes.size(); i++) {
-                airplanes.get(i).setKey(i);  
+            airplanes.remove(airplane.getKey());
+            airplaneList = null;
+            forgetRange(airplane);
+            for (AirplaneListener listener : listeners) {
+                listener.airplaneDeleted(airplane);
             }
     
-            saveAirplanesToCSV("Airplanes.csv"); 
+            recordChange(MutationJournal.Operation.DELETE, airplane.getKey(), null);
         } else {
             System.out.println("Could not delete Airplane, Airplane not found");
         }
     }
 
     /**
-     * Edits the airplane at the specified index with a new airplane object.
+     * Replaces the airplane with the specified key with a new airplane object, which
+     * takes over the key and the place of the old one.
      *
-     * @param airplaneIndex The index of the airplane to edit.
-     * @param airplane The new airplane object to set at the specified index.
+     * @param airplaneKey The key of the airplane to edit.
+     * @param airplane The new airplane object to set at the specified key.
      */
-    public void editAirplane(int airplaneIndex, Airplane airplane) {
-        if (exists(airplanes.get(airplaneIndex))) {
-            airplanes.set(airplaneIndex, airplane);
-            saveAirplanesToCSV("Airplanes.csv"); 
+    public void editAirplane(int airplaneKey, Airplane airplane) {
+        if (airplanes.containsKey(airplaneKey)) {
+            airplane.setKey(airplaneKey);
+            Airplane oldAirplane = airplanes.put(airplaneKey, airplane);
+            airplaneList = null;
+            forgetRange(oldAirplane);
+            if (maxRange >= 0) {
+                maxRange = Math.max(maxRange, airplane.getRange());
+            }
+            for (AirplaneListener listener : listeners) {
+                listener.airplaneEdited(oldAirplane, airplane);
+            }
+            recordChange(MutationJournal.Operation.EDIT, airplaneKey, airplane);
         } else {
             System.out.println("Could not edit Airplane, Airplane not found");
         }
@@ -177,7 +403,7 @@ public class AirplaneManager {
         if (airplanes.isEmpty()) {
             System.out.println("No Airplanes available to display.");
         } else {
-            for (Airplane airplane : airplanes) {
+            for (Airplane airplane : airplanes.values()) {
                 String airplaneInformation = airplane.displayInfo(); 
                 System.out.println(airplaneInformation);
             }
@@ -1,4 +1,5 @@
 import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Represents an airport with details such as identifier, name, location, frequencies, and fuel types.
@@ -9,8 +10,13 @@ public class Airport {
     private String name;
     private double latitude;
     private double longitude;
+    private double sinLatitude; // Trigonometry of the position, kept for heading and distance calculations
+    private double cosLatitude;
+    private double sinLongitude;
+    private double cosLongitude;
     private HashMap<String, Double> frequencies;
     private String[] fuelTypes;
+    private int fuelMask;
 
     /**
      * Constructs an Airport object with the given details.
@@ -84,6 +90,9 @@ public class Airport {
      */
     private void setLatitude(double newLatitude) {
         latitude = newLatitude;
+        double radians = Math.toRadians(newLatitude);
+        sinLatitude = Math.sin(radians);
+        cosLatitude = Math.cos(radians);
     }
 
     /**
@@ -102,6 +111,45 @@ public class Airport {
      */
     private void setLongitude(double newLongitude) {
         longitude = newLongitude;
+        double radians = Math.toRadians(newLongitude);
+        sinLongitude = Math.sin(radians);
+        cosLongitude = Math.cos(radians);
+    }
+
+    /**
+     * Returns the sine of the latitude, calculated once when the latitude is set.
+     *
+     * @return The sine of the latitude.
+     */
+    double getSinLatitude() {
+        return sinLatitude;
+    }
+
+    /**
+     * Returns the cosine of the latitude, calculated once when the latitude is set.
+     *
+     * @return The cosine of the latitude.
+     */
+    double getCosLatitude() {
+        return cosLatitude;
+    }
+
+    /**
+     * Returns the sine of the longitude, calculated once when the longitude is set.
+     *
+     * @return The sine of the longitude.
+     */
+    double getSinLongitude() {
+        return sinLongitude;
+    }
+
+    /**
+     * Returns the cosine of the longitude, calculated once when the longitude is set.
+     *
+     * @return The cosine of the longitude.
+     */
+    double getCosLongitude() {
+        return cosLongitude;
     }
 
     /**
@@ -135,6 +183,15 @@ public class Airport {
         return fuelTypes;
     }
 
+    /**
+     * Returns the fuel types available at the airport as a fuel mask (see FuelType).
+     *
+     * @return The fuel mask of the airport.
+     */
+    public int getFuelMask() {
+        return fuelMask;
+    }
+
     /**
      * Sets the fuel types available at the airport.
      *
@@ -142,6 +199,7 @@ public class Airport {
      */
     private void setFuelTypes(String[] newFuelTypes) {
         fuelTypes = newFuelTypes;
+        fuelMask = FuelType.maskOf(newFuelTypes);
     }
 
     /**
@@ -200,4 +258,33 @@ public class Airport {
 
         return sb.toString();
     }
+
+    /**
+     * Checks whether another object is an airport with the same ICAO identifier.
+     * The identifier is what the airport is known by in the files and the routing graph,
+     * so an updated copy of an airport is equal to the original.
+     *
+     * @param other The object to compare with.
+     * @return true if the other object is an airport with the same identifier.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Airport)) {
+            return false;
+        }
+        return Objects.equals(identifier, ((Airport) other).identifier);
+    }
+
+    /**
+     * Returns a hash code based on the ICAO identifier, consistent with equals.
+     *
+     * @return The hash code of the airport.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(identifier);
+    }
 }
@@ -0,0 +1,32 @@
+/**
+ * Receives the changes an AirportManager makes to its airports, so that data derived
+ * from the airports can be kept up to date.
+ */
+public interface AirportListener {
+
+    /**
+     * Called after an airport has been added.
+     *
+     * @param airport The new airport.
+     */
+    void airportAdded(Airport airport);
+
+    /**
+     * Called after an airport has been deleted.
+     *
+     * @param airport The deleted airport.
+     */
+    void airportDeleted(Airport airport);
+
+    /**
+     * Called after an airport has been replaced by an edited copy. By default this is
+     * handled as a deletion followed by an addition.
+     *
+     * @param oldAirport The airport that was replaced.
+     * @param newAirport The airport that replaced it.
+     */
+    default void airportEdited(Airport oldAirport, Airport newAirport) {
+        airportDeleted(oldAirport);
+        airportAdded(newAirport);
+    }
+}
@@ -3,62 +3,52 @@ import java.util.*;
 
 /**
  * Manages a collection of airports and performs operations such as loading, saving, adding, editing, deleting, and displaying airports.
+ * Airports are kept in a hash map by ICAO identifier, in the order they were added, so looking
+ * one up, checking for a duplicate, editing and deleting do not have to search the whole list.
  */
 public class AirportManager {
-    private ArrayList<Airport> airports;
+    private LinkedHashMap<String, Airport> airports;
+    private ArrayList<Airport> airportList; // The airports in order, rebuilt after a change
+    private Graph airportsGraph;
+    private AirportSearchIndex searchIndex;
+    private double maxLegDistance = Double.POSITIVE_INFINITY;
+    private boolean lazyGraph;
+    private final ArrayList<AirportListener> listeners = new ArrayList<>();
+    private final MutationJournal<Airport> journal =
+            new MutationJournal<>(new File("Airports.csv"), AirportManager::parseAirport, Airport::toCSV);
 
     /**
-     * Constructs an AirportManager and loads airports from a CSV file.
+     * Constructs an AirportManager and loads airports from a CSV file, then applies the
+     * changes recorded in its journal.
      */
     public AirportManager() {
-        airports = new ArrayList<>();
+        airports = new LinkedHashMap<>();
+        MutationJournal.awaitWrites();
         if (!loadAirportsFromCSV("Airports.csv")){
             loadAirportsFromCSV("Airports.csv.tmp");
         }
+        replayJournal();
     }
 
     /**
-     * Loads airport data from a CSV file and populates the list of airports.
+     * Loads airport data from a CSV file and populates the list of airports. The file may be
+     * compressed with gzip, and large files are parsed in parallel chunks by CsvParser. The binary
+     * snapshot of the file is used instead when it is up to date, and written when it is not.
      *
      * @param fileName The name of the CSV file to load data from.
      * @return true if airports were successfully loaded, false otherwise.
      */
     private boolean loadAirportsFromCSV(String fileName) {
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-
-                String ICAO = parts[0].trim();
-                String name = parts[1].trim();
-                double latitude = Double.parseDouble(parts[2].trim());
-                double longitude = Double.parseDouble(parts[3].trim());
-
-                HashMap<String, Double> frequencies = new HashMap<>();
-                String[] freqPairs = parts[4].trim().replaceAll("[{}]", "").split(";");
-
-                for (String pair : freqPairs) {
-                    String[] kv = pair.split(":");
-                    if (kv.length == 2) {
-                        String key = kv[0].trim();
-                        String value = kv[1].trim();
-                        if (!value.isEmpty()) {
-                            try {
-                                frequencies.put(key, Double.parseDouble(value));
-                            } catch (NumberFormatException e) {
-                                System.err.println("Invalid number format for key: " + key + " value: " + value);
-                            }
-                        }
-                    }
-                }
-
-                // Converting fuel types into String[]
-                String[] fuelTypes = {};
-                fuelTypes = parts[5].trim().split(";");
-
-                Airport airport = new Airport(ICAO, name, latitude, longitude, frequencies, fuelTypes);
-                airports.add(airport);
-            }
+        File file = new File(fileName);
+        ArrayList<Airport> snapshot = DatabaseSnapshot.loadAirports(file);
+        if (snapshot != null) {
+            putAll(snapshot);
+            return true;
+        }
+        try {
+            ArrayList<Airport> parsed = CsvParser.parse(file, AirportManager::parseAirport);
+            putAll(parsed);
+            saveSnapshot(file, parsed);
             return true;
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
@@ -67,48 +57,252 @@ public class AirportManager {
     }
 
     /**
-     * Saves the list of airports to a CSV file.
+     * Adds loaded airports to the map. Should the file hold an identifier more than once,
+     * the first airport with it is kept, as addAirport would.
      *
-     * @param fileName The name of the CSV file to save data to.
+     * @param loaded The airports in the order of the file.
      */
-    private void saveAirportsToCSV(String fileName) {
-        File tempFile = new File(fileName + ".tmp");
-        for(int i = 0; i < 3; i++) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
-                for (Airport airport : airports) {
-                    bw.write(airport.toCSV());
-                    bw.newLine();
+    private void putAll(ArrayList<Airport> loaded) {
+        for (Airport airport : loaded) {
+            airports.putIfAbsent(airport.getIdentifier(), airport);
+        }
+        airportList = null;
+    }
+
+    /**
+     * Creates an airport from a row of the airports file.
+     *
+     * @param row The row, with the ICAO, name, latitude, longitude, frequencies and fuel types.
+     * @return The airport, or null if the row is blank.
+     */
+    private static Airport parseAirport(CsvRow row) {
+        if (row.getFieldCount() == 0) {
+            return null;
+        }
+        String ICAO = row.getString(0);
+        String name = row.getString(1);
+        double latitude = row.getDouble(2);
+        double longitude = row.getDouble(3);
+        HashMap<String, Double> frequencies = parseFrequencies(row.getChars(), row.getStart(4), row.getEnd(4));
+
+        // Converting fuel types into String[]
+        String[] fuelTypes = row.getString(5).split(";");
+
+        return new Airport(ICAO, name, latitude, longitude, frequencies, fuelTypes);
+    }
+
+    /**
+     * Reads the frequencies column of the airports file, pairs such as "AM:118.1" separated
+     * by ";" and optionally wrapped in braces. Pairs without a value are skipped.
+     *
+     * @param chars The buffer the column is in.
+     * @param start The position of the first character of the column.
+     * @param end The position after the last character of the column.
+     * @return The frequencies by name.
+     */
+    private static HashMap<String, Double> parseFrequencies(char[] chars, int start, int end) {
+        HashMap<String, Double> frequencies = new HashMap<>();
+        int pairStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && chars[i] != ';') {
+                continue;
+            }
+            int colon = -1;
+            int colons = 0;
+            for (int j = pairStart; j < i; j++) {
+                if (chars[j] == ':') {
+                    colon = j;
+                    colons++;
+                }
+            }
+            if (colons == 1) {
+                String key = trimmed(chars, pairStart, colon);
+                int valueStart = skipBlank(chars, colon + 1, i);
+                int valueEnd = i;
+                while (valueEnd > valueStart && isBlank(chars[valueEnd - 1])) {
+                    valueEnd--;
+                }
+                if (valueEnd > valueStart) {
+                    try {
+                        frequencies.put(key, CsvParser.parseDouble(chars, valueStart, valueEnd));
+                    } catch (NumberFormatException e) {
+                        String value = new String(chars, valueStart, valueEnd - valueStart);
+                        System.err.println("Invalid number format for key: " + key + " value: " + value);
+                    }
                 }
-                break;
-            } catch (IOException e) {
-                System.out.println("Error writing to .tmp file, " + "Attempt: " + i);
-                e.printStackTrace();
             }
+            pairStart = i + 1;
         }
+        return frequencies;
+    }
 
+    /**
+     * Returns part of a buffer as a string, without the spaces and braces around it.
+     *
+     * @param chars The buffer.
+     * @param start The position of the first character.
+     * @param end The position after the last character.
+     * @return The trimmed string.
+     */
+    private static String trimmed(char[] chars, int start, int end) {
+        start = skipBlank(chars, start, end);
+        while (end > start && isBlank(chars[end - 1])) {
+            end--;
+        }
+        return new String(chars, start, end - start);
+    }
+
+    /**
+     * Returns the position of the first character that is not a space or a brace.
+     *
+     * @param chars The buffer.
+     * @param start The position to start at.
+     * @param end The position to stop at.
+     * @return The position of the first other character, or end if there is none.
+     */
+    private static int skipBlank(char[] chars, int start, int end) {
+        while (start < end && isBlank(chars[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns whether a character is ignored around frequency names and values.
+     *
+     * @param c The character.
+     * @return true for spaces and braces.
+     */
+    private static boolean isBlank(char c) {
+        return c <= ' ' || c == '{' || c == '}';
+    }
+
+    /**
+     * Writes the binary snapshot of a CSV file that holds the current airports, so that the
+     * next load does not have to parse the file.
+     *
+     * @param file The CSV file the airports were loaded from or saved to.
+     * @param airportsToSave The airports the file holds.
+     */
+    private void saveSnapshot(File file, ArrayList<Airport> airportsToSave) {
+        try {
+            DatabaseSnapshot.saveAirports(file, airportsToSave);
+        } catch (IOException e) {
+            System.out.println("Could not save snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves a list of airports to a CSV file. The list is written to a temporary file first,
+     * which the journal then moves over the CSV file in one atomic step, starting itself
+     * again for the new file.
+     *
+     * @param fileName The name of the CSV file to save data to.
+     * @param airportsToSave The airports to save.
+     * @param mark The mark of the journal taken together with the copy of the airports.
+     * @return true if the file was written completely, false otherwise.
+     */
+    private boolean saveAirportsToCSV(String fileName, ArrayList<Airport> airportsToSave, long mark) {
         File fileToWrite = new File(fileName);
+        File tempFile = new File(fileName + ".tmp");
         for(int i = 0; i < 3; i++) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(fileToWrite))) {
-                for (Airport airport : airports) {
-                    bw.write(airport.toCSV());
-                    bw.newLine();
+            try {
+                try (BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
+                    for (Airport airport : airportsToSave) {
+                        bw.write(airport.toCSV());
+                        bw.newLine();
+                    }
+                }
+                // The journal moves the complete file over the old one in one step, so it is never seen half written
+                if (!journal.replaceBase(tempFile, mark)) {
+                    return false; // A newer copy of the list has been saved already
                 }
-                break;
+                saveSnapshot(fileToWrite, airportsToSave);
+                return true;
             } catch (IOException e) {
                 System.out.println("Error writing to .csv file, " + "Attempt: " + i);
                 e.printStackTrace();
             }
         }
+        return false;
     }
 
     /**
-     * Checks if the specified airport already exists in the list.
+     * Applies the changes recorded in the journal since the CSV file was last written.
+     */
+    private void replayJournal() {
+        for (MutationJournal.Record<Airport> record : journal.read()) {
+            Airport airport = record.getItem();
+            switch (record.getOperation()) {
+                case ADD:
+                    airports.put(airport.getIdentifier(), airport);
+                    break;
+                case EDIT:
+                    // Edited airports move to the end of the list, as in editAirport
+                    airports.remove(record.getKey());
+                    airports.put(airport.getIdentifier(), airport);
+                    break;
+                case DELETE:
+                    airports.remove(record.getKey());
+                    break;
+            }
+        }
+        airportList = null;
+    }
+
+    /**
+     * Records a change in the journal instead of rewriting the CSV file, and compacts the
+     * journal into the file in the background once it has grown large. If the journal
+     * cannot be written, the whole file is saved instead.
+     *
+     * @param operation The kind of change.
+     * @param identifier The ICAO identifier of the airport the change applies to, before the change.
+     * @param airport The new airport, or null for a delete.
+     */
+    private void recordChange(MutationJournal.Operation operation, String identifier, Airport airport) {
+        airportList = null;
+        try {
+            journal.append(operation, identifier, airport);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal, saving the whole file: " + e.getMessage());
+            saveInBackground();
+            MutationJournal.awaitWrites();
+            return;
+        }
+        if (journal.needsCompaction()) {
+            saveInBackground();
+        }
+    }
+
+    /**
+     * Writes the whole list of airports to the CSV file on the background thread, which
+     * also starts the journal again for the new file.
+     */
+    private void saveInBackground() {
+        // The background write works on a copy, as the map keeps changing
+        ArrayList<Airport> airportsToSave = new ArrayList<>(airports.values());
+        long mark = journal.mark();
+        journal.compact(() -> saveAirportsToCSV("Airports.csv", airportsToSave, mark));
+    }
+
+    /**
+     * Checks if an airport with the ICAO identifier of the specified airport already exists.
      *
      * @param airport The airport to check for existence.
      * @return true if the airport exists, false otherwise.
      */
     private boolean exists(Airport airport) {
-        return airports.contains(airport);
+        return airports.containsKey(airport.getIdentifier());
+    }
+
+    /**
+     * Returns the airport with the given ICAO identifier.
+     *
+     * @param identifier The ICAO identifier of the airport.
+     * @return The airport, or null if there is none with the identifier.
+     */
+    public Airport getAirport(String identifier) {
+        return airports.get(identifier);
     }
 
     /**
@@ -118,20 +312,113 @@ public class AirportManager {
      */
     public void addAirport(Airport airport) {
         if (!exists(airport)) {
-            airports.add(airport);
-            saveAirportsToCSV("Airports.csv");
+            airports.put(airport.getIdentifier(), airport);
+            if (airportsGraph != null) {
+                airportsGraph.addNode(airport);
+            }
+            for (AirportListener listener : listeners) {
+                listener.airportAdded(airport);
+            }
+            recordChange(MutationJournal.Operation.ADD, airport.getIdentifier(), airport);
         } else {
             System.out.println("Could not add Airport, Airport already exists");
         }
     }
 
     /**
-     * Returns the list of all airports managed by this AirportManager.
+     * Sets whether changes to the airports are queued and written to the journal by a
+     * background thread, a batch at a time, instead of before each change returns.
+     * Queued changes are written by flush, before any manager loads the file, and when
+     * the program shuts down.
+     *
+     * @param writeBehind true to queue changes.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        journal.setWriteBehind(writeBehind);
+    }
+
+    /**
+     * Writes every queued change to the airports to the journal.
+     */
+    public void flush() {
+        journal.flush();
+    }
+
+    /**
+     * Registers a listener that is told about every airport that is added, edited or deleted.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(AirportListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the list of all airports managed by this AirportManager, in the order they were
+     * added. The list is built once after each change and should not be modified.
      *
      * @return An ArrayList containing all airports.
      */
     public ArrayList<Airport> getAirports() {
-        return airports;
+        if (airportList == null) {
+            airportList = new ArrayList<>(airports.values());
+        }
+        return airportList;
+    }
+
+    /**
+     * Returns the routing graph of all airports managed by this AirportManager.
+     * The graph is built on first use and then kept up to date by addAirport,
+     * editAirport and deleteAirport, so it is not rebuilt for every flight plan.
+     *
+     * @return The Graph connecting all airports.
+     */
+    public Graph getGraph() {
+        if (airportsGraph == null) {
+            airportsGraph = new Graph(getAirports(), maxLegDistance, lazyGraph);
+        }
+        return airportsGraph;
+    }
+
+    /**
+     * Returns the search index of all airports managed by this AirportManager.
+     * The index is built on first use and then kept up to date as a listener of
+     * this manager, so searches do not have to go through every airport.
+     *
+     * @return The AirportSearchIndex of all airports.
+     */
+    public AirportSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new AirportSearchIndex(airports.values());
+            addListener(searchIndex);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Sets the longest leg the routing graph needs to contain, usually the maximum
+     * range of the fleet. The graph is rebuilt on next use if the bound changes.
+     *
+     * @param newMaxLegDistance The longest leg in nautical miles.
+     */
+    public void setMaxLegDistance(double newMaxLegDistance) {
+        if (newMaxLegDistance != maxLegDistance) {
+            maxLegDistance = newMaxLegDistance;
+            airportsGraph = null;
+        }
+    }
+
+    /**
+     * Sets whether the routing graph generates its connections during route searches
+     * instead of storing them. The graph is rebuilt on next use if the mode changes.
+     *
+     * @param newLazyGraph true to use a lazy graph.
+     */
+    public void setLazyGraph(boolean newLazyGraph) {
+        if (newLazyGraph != lazyGraph) {
+            lazyGraph = newLazyGraph;
+            airportsGraph = null;
+        }
     }
 
     /**
@@ -141,8 +428,14 @@ public class AirportManager {
      */
     public void deleteAirport(Airport airport) {
         if (exists(airport)) {
-            airports.remove(airport);
-            saveAirportsToCSV("Airports.csv");
+            airport = airports.remove(airport.getIdentifier());
+            if (airportsGraph != null) {
+                airportsGraph.removeNode(airport);
+            }
+            for (AirportListener listener : listeners) {
+                listener.airportDeleted(airport);
+            }
+            recordChange(MutationJournal.Operation.DELETE, airport.getIdentifier(), null);
         } else {
             System.out.println("Could not delete Airport, Airport not found");
         }
@@ -150,17 +443,28 @@ public class AirportManager {
 
     /**
      * Edits an existing airport by removing the old airport and adding the new one, then saves the updated list to a CSV file.
+     * The edit is refused if it changes the ICAO identifier to one another airport already has.
      *
      * @param oldAirport The airport to be replaced.
      * @param newAirport The new airport to replace the old one.
      */
     public void editAirport(Airport oldAirport, Airport newAirport) {
         System.out.println("in editAirport");
-        if(airports.contains(oldAirport)){
+        if(exists(oldAirport)){
             System.out.println("in if");
-            airports.remove(oldAirport);
-            airports.add(newAirport);
-            saveAirportsToCSV("Airports.csv");
+            if (!oldAirport.equals(newAirport) && exists(newAirport)) {
+                System.out.println("Could not edit Airport, an Airport with identifier " + newAirport.getIdentifier() + " already exists");
+                return;
+            }
+            oldAirport = airports.remove(oldAirport.getIdentifier());
+            airports.put(newAirport.getIdentifier(), newAirport);
+            if (airportsGraph != null) {
+                airportsGraph.replaceNode(oldAirport, newAirport);
+            }
+            for (AirportListener listener : listeners) {
+                listener.airportEdited(oldAirport, newAirport);
+            }
+            recordChange(MutationJournal.Operation.EDIT, oldAirport.getIdentifier(), newAirport);
         }
     }
 
@@ -185,7 +489,7 @@ public class AirportManager {
         if (airports.isEmpty()) {
             System.out.println("No airports available to display.");
         } else {
-            for (Airport airport : airports) {
+            for (Airport airport : airports.values()) {
                 String airportInformation = airport.displayInfo();
                 System.out.println(airportInformation);
             }
@@ -0,0 +1,513 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * An index for finding airports by ICAO identifier or name without scanning every airport.
+ * Identifiers and names are lowercased once, when an airport is added, and kept in:
+ * <ul>
+ * <li>hash maps from identifier and from name, for exact matches;</li>
+ * <li>a trie of identifiers and a trie of the first characters of names, for prefix
+ * matches;</li>
+ * <li>an inverted index from every two- and three-character sequence (n-gram) of an
+ * identifier or name to the airports that contain it, for matches anywhere in the text.
+ * A query is only checked against the airports of its rarest n-gram.</li>
+ * </ul>
+ * Matches are ranked exact first, then prefix, then substring, and within each rank in
+ * the order the airports were added. Every list of airports in the index is kept in that
+ * order, so a search stops as soon as it has found enough matches.
+ * <p>
+ * The index listens to the airport manager, so it is built once and then kept up to date.
+ * Deleted airports are only marked as deleted in the lists, which are cleaned up once
+ * half of their airports are gone. All methods are synchronized, so the index can be
+ * shared by several threads.
+ */
+public class AirportSearchIndex implements AirportListener {
+    private static final int MIN_GRAM_LENGTH = 2;
+    private static final int MAX_GRAM_LENGTH = 3;
+    private static final int NAME_PREFIX_DEPTH = 4; // Longer name prefixes are checked against the names
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // By identifier, in order added
+    private final HashMap<String, ArrayList<Entry>> byIdentifier = new HashMap<>();
+    private final HashMap<String, ArrayList<Entry>> byName = new HashMap<>();
+    private final PrefixTrie identifierTrie = new PrefixTrie(Integer.MAX_VALUE);
+    private final PrefixTrie nameTrie = new PrefixTrie(NAME_PREFIX_DEPTH);
+    private final HashMap<String, Posting> grams = new HashMap<>();
+    private long nextOrder;
+
+    /**
+     * Constructs an index of the given airports.
+     *
+     * @param airports The airports, in the order matches should be listed in.
+     */
+    public AirportSearchIndex(Collection<Airport> airports) {
+        for (Airport airport : airports) {
+            airportAdded(airport);
+        }
+    }
+
+    /**
+     * Returns the number of airports in the index.
+     *
+     * @return The number of airports.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds the airports whose ICAO identifier or name contains the query, ignoring case.
+     * Airports that match exactly come first, then those that start with the query, then
+     * those that contain it elsewhere.
+     *
+     * @param query The ICAO identifier or part of the name to look for.
+     * @param limit The largest number of airports to return.
+     * @return The matching airports, best first.
+     */
+    public synchronized ArrayList<Airport> search(String query, int limit) {
+        String search = normalize(query);
+        Matches matches = new Matches(limit);
+
+        // Exact matches, usually one airport
+        ArrayList<Entry> exact = new ArrayList<>();
+        addAll(exact, byIdentifier.get(search));
+        addAll(exact, byName.get(search));
+        exact.sort((a, b) -> Long.compare(a.order, b.order));
+        for (Entry entry : exact) {
+            matches.add(entry);
+        }
+
+        // Prefix matches, merging the identifier and name lists in order. Names that start with
+        // a query longer than the name trie is deep are among the airports of its rarest n-gram
+        // too, so whichever of the two lists is shorter is checked.
+        Posting candidates = (search.length() < MIN_GRAM_LENGTH) ? null : rarestGram(search);
+        Posting identifiers = identifierTrie.find(search);
+        Posting names = nameTrie.find(search);
+        if (search.length() > NAME_PREFIX_DEPTH && Posting.liveSize(candidates) < Posting.liveSize(names)) {
+            names = candidates;
+        }
+        int i = Posting.skipDeleted(identifiers, 0);
+        int j = Posting.skipDeleted(names, 0);
+        while (!matches.isFull()) {
+            Entry fromIdentifiers = Posting.get(identifiers, i);
+            Entry fromNames = Posting.get(names, j);
+            if (fromIdentifiers == null && fromNames == null) {
+                break;
+            }
+            if (fromNames == null || (fromIdentifiers != null && fromIdentifiers.order <= fromNames.order)) {
+                matches.add(fromIdentifiers);
+                i = Posting.skipDeleted(identifiers, i + 1);
+            } else {
+                if (fromNames.name.startsWith(search)) {
+                    matches.add(fromNames);
+                }
+                j = Posting.skipDeleted(names, j + 1);
+            }
+        }
+
+        // Substring matches
+        if (!matches.isFull()) {
+            if (search.length() < MIN_GRAM_LENGTH) {
+                for (Entry entry : entries.values()) {
+                    if (matches.isFull()) {
+                        break;
+                    }
+                    if (entry.contains(search)) {
+                        matches.add(entry);
+                    }
+                }
+            } else {
+                int k = Posting.skipDeleted(candidates, 0);
+                Entry entry;
+                while (!matches.isFull() && (entry = Posting.get(candidates, k)) != null) {
+                    if (entry.contains(search)) {
+                        matches.add(entry);
+                    }
+                    k = Posting.skipDeleted(candidates, k + 1);
+                }
+            }
+        }
+        return matches.airports;
+    }
+
+    /**
+     * Adds an airport to the index. It is listed after the airports already in the index.
+     *
+     * @param airport The new airport.
+     */
+    @Override
+    public synchronized void airportAdded(Airport airport) {
+        if (entries.containsKey(airport.getIdentifier())) {
+            return;
+        }
+        Entry entry = new Entry(airport, nextOrder++);
+        entries.put(airport.getIdentifier(), entry);
+        byIdentifier.computeIfAbsent(entry.identifier, key -> new ArrayList<>(1)).add(entry);
+        byName.computeIfAbsent(entry.name, key -> new ArrayList<>(1)).add(entry);
+        identifierTrie.add(entry.identifier, entry);
+        nameTrie.add(entry.name, entry);
+        for (String gram : entry.grams()) {
+            grams.computeIfAbsent(gram, key -> new Posting()).add(entry);
+        }
+    }
+
+    /**
+     * Removes an airport from the index.
+     *
+     * @param airport The deleted airport.
+     */
+    @Override
+    public synchronized void airportDeleted(Airport airport) {
+        Entry entry = entries.remove(airport.getIdentifier());
+        if (entry == null) {
+            return;
+        }
+        entry.deleted = true;
+        remove(byIdentifier, entry.identifier, entry);
+        remove(byName, entry.name, entry);
+        identifierTrie.remove(entry.identifier);
+        nameTrie.remove(entry.name);
+        for (String gram : entry.grams()) {
+            Posting posting = grams.get(gram);
+            if (posting.removeOne()) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Lowercases text the same way for airports and queries.
+     *
+     * @param text The text.
+     * @return The text in lower case.
+     */
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds the entries of a list, if there is one.
+     *
+     * @param result The list to add to.
+     * @param toAdd The entries to add, or null.
+     */
+    private static void addAll(ArrayList<Entry> result, ArrayList<Entry> toAdd) {
+        if (toAdd != null) {
+            result.addAll(toAdd);
+        }
+    }
+
+    /**
+     * Removes an entry from the list of a key, and the key once its list is empty.
+     *
+     * @param map The map.
+     * @param key The key.
+     * @param entry The entry to remove.
+     */
+    private static void remove(HashMap<String, ArrayList<Entry>> map, String key, Entry entry) {
+        ArrayList<Entry> list = map.get(key);
+        list.remove(entry);
+        if (list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Returns the airports of the n-gram of a query that the fewest airports contain.
+     * Every airport that contains the query is among them. The longest n-grams the
+     * index holds are used, as they are the most selective.
+     *
+     * @param search The normalized query, at least MIN_GRAM_LENGTH characters long.
+     * @return The airports of the rarest n-gram, or null if some n-gram of the query is
+     *         in no airport.
+     */
+    private Posting rarestGram(String search) {
+        int length = Math.min(search.length(), MAX_GRAM_LENGTH);
+        Posting rarest = null;
+        for (int i = 0; i + length <= search.length(); i++) {
+            Posting posting = grams.get(search.substring(i, i + length));
+            if (posting == null) {
+                return null;
+            }
+            if (rarest == null || posting.liveSize() < rarest.liveSize()) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * The result of a search: matching airports without duplicates, up to a limit.
+     */
+    private static class Matches {
+        private final ArrayList<Airport> airports = new ArrayList<>();
+        private final HashSet<Entry> found = new HashSet<>();
+        private final int limit;
+
+        /**
+         * Constructs an empty result.
+         *
+         * @param limit The largest number of airports to return.
+         */
+        private Matches(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Adds an airport to the result unless it is already in it.
+         *
+         * @param entry The entry of the airport.
+         */
+        private void add(Entry entry) {
+            if (!isFull() && found.add(entry)) {
+                airports.add(entry.airport);
+            }
+        }
+
+        /**
+         * Returns whether the result has reached its limit.
+         *
+         * @return true if no more airports are needed.
+         */
+        private boolean isFull() {
+            return airports.size() >= limit;
+        }
+    }
+
+    /**
+     * An airport with its normalized identifier and name.
+     */
+    private static class Entry {
+        private final Airport airport;
+        private final String identifier;
+        private final String name;
+        private final long order;
+        private boolean deleted;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param airport The airport.
+         * @param order The position of the airport in the order airports were added.
+         */
+        private Entry(Airport airport, long order) {
+            this.airport = airport;
+            this.identifier = normalize(airport.getIdentifier());
+            this.name = normalize(airport.getName());
+            this.order = order;
+        }
+
+        /**
+         * Checks whether the identifier or the name contains a normalized query.
+         *
+         * @param search The normalized query.
+         * @return true if either contains the query.
+         */
+        private boolean contains(String search) {
+            return identifier.contains(search) || name.contains(search);
+        }
+
+        /**
+         * Returns the n-grams of the identifier and the name, without duplicates.
+         *
+         * @return The n-grams.
+         */
+        private HashSet<String> grams() {
+            HashSet<String> result = new HashSet<>();
+            addGrams(identifier, result);
+            addGrams(name, result);
+            return result;
+        }
+
+        /**
+         * Adds the n-grams of a text to a set.
+         *
+         * @param text The text.
+         * @param result The set to add to.
+         */
+        private static void addGrams(String text, HashSet<String> result) {
+            for (int length = MIN_GRAM_LENGTH; length <= MAX_GRAM_LENGTH; length++) {
+                for (int i = 0; i + length <= text.length(); i++) {
+                    result.add(text.substring(i, i + length));
+                }
+            }
+        }
+    }
+
+    /**
+     * A list of airports in the order they were added to the index. New airports always
+     * come last, so adding keeps the order. Deleted airports stay in the list, skipped by
+     * skipDeleted, until half of the list is deleted and it is compacted. The static
+     * accessors treat a null list as empty.
+     */
+    private static class Posting {
+        private Entry[] items = new Entry[2];
+        private int size;
+        private int deleted;
+
+        /**
+         * Adds an airport at the end of the list.
+         *
+         * @param entry The entry of the airport.
+         */
+        private void add(Entry entry) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = entry;
+        }
+
+        /**
+         * Counts one of the airports in the list as deleted, compacting the list once half
+         * of it is. The airport must already be marked as deleted.
+         *
+         * @return true if no airports are left in the list.
+         */
+        private boolean removeOne() {
+            deleted++;
+            if (deleted * 2 > size) {
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (!items[i].deleted) {
+                        items[kept++] = items[i];
+                    }
+                }
+                Arrays.fill(items, kept, size, null);
+                size = kept;
+                deleted = 0;
+            }
+            return liveSize() == 0;
+        }
+
+        /**
+         * Returns the number of airports in the list that are not deleted.
+         *
+         * @return The number of airports.
+         */
+        private int liveSize() {
+            return size - deleted;
+        }
+
+        /**
+         * Returns the number of airports in a list that are not deleted.
+         *
+         * @param posting The list, or null.
+         * @return The number of airports, 0 for no list.
+         */
+        private static int liveSize(Posting posting) {
+            return (posting == null) ? 0 : posting.liveSize();
+        }
+
+        /**
+         * Returns the first position at or after a given one that holds an airport that is
+         * not deleted.
+         *
+         * @param posting The list, or null.
+         * @param from The position to start at.
+         * @return The position, or the size of the list if there is none.
+         */
+        private static int skipDeleted(Posting posting, int from) {
+            if (posting == null) {
+                return 0;
+            }
+            int i = from;
+            while (i < posting.size && posting.items[i].deleted) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Returns the airport at a position of the list.
+         *
+         * @param posting The list, or null.
+         * @param i The position.
+         * @return The entry of the airport, or null if the position is past the end.
+         */
+        private static Entry get(Posting posting, int i) {
+            return (posting == null || i >= posting.size) ? null : posting.items[i];
+        }
+    }
+
+    /**
+     * A trie in which every node holds the airports whose text starts with the characters
+     * leading to it, in the order they were added. Texts longer than the depth of the trie
+     * are kept at the node of their first characters.
+     */
+    private static class PrefixTrie {
+        private final int maxDepth;
+        private final Node root = new Node();
+
+        /**
+         * Constructs an empty trie.
+         *
+         * @param maxDepth The most characters of a text the trie has nodes for.
+         */
+        private PrefixTrie(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        /**
+         * Returns the airports whose text starts with a prefix, or, for prefixes longer
+         * than the trie is deep, with the first characters of the prefix.
+         *
+         * @param prefix The normalized prefix.
+         * @return The airports, or null if there are none.
+         */
+        private Posting find(String prefix) {
+            Node node = root;
+            int depth = Math.min(prefix.length(), maxDepth);
+            for (int i = 0; i < depth && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return (node == null) ? null : node.posting;
+        }
+
+        /**
+         * Adds an airport to the nodes of the first characters of its text.
+         *
+         * @param text The normalized text.
+         * @param entry The entry of the airport.
+         */
+        private void add(String text, Entry entry) {
+            Node node = root;
+            node.posting.add(entry);
+            int depth = Math.min(text.length(), maxDepth);
+            for (int i = 0; i < depth; i++) {
+                node = node.children.computeIfAbsent(text.charAt(i), key -> new Node());
+                node.posting.add(entry);
+            }
+        }
+
+        /**
+         * Counts a deleted airport out of the nodes of its text, removing nodes left empty.
+         *
+         * @param text The normalized text of the airport.
+         */
+        private void remove(String text) {
+            Node node = root;
+            node.posting.removeOne();
+            int depth = Math.min(text.length(), maxDepth);
+            for (int i = 0; i < depth; i++) {
+                Node child = node.children.get(text.charAt(i));
+                if (child.posting.removeOne()) {
+                    node.children.remove(text.charAt(i));
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        /**
+         * A node of the trie.
+         */
+        private static class Node {
+            private final HashMap<Character, Node> children = new HashMap<>();
+            private final Posting posting = new Posting();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DiagnosticListener that hands messages to another listener on a background thread,
+ * so that searches never wait for console or file output. Messages are kept in a bounded
+ * queue; when the queue is full, new messages are dropped and counted instead of slowing
+ * the searches down. Messages from one thread are delivered in the order they were reported.
+ */
+public class AsyncDiagnostics implements DiagnosticListener, AutoCloseable {
+    private final DiagnosticListener sink;
+    private final ArrayBlockingQueue<Message> queue;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Constructs the listener and starts its background thread.
+     *
+     * @param sink The listener the messages are delivered to.
+     * @param capacity The largest number of messages waiting to be delivered.
+     */
+    public AsyncDiagnostics(DiagnosticListener sink, int capacity) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.worker = new Thread(this::deliverMessages, "diagnostics");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public boolean isEnabled(DiagnosticLevel level) {
+        return !closed && sink.isEnabled(level);
+    }
+
+    @Override
+    public void report(DiagnosticLevel level, String message) {
+        if (closed || !queue.offer(new Message(level, message))) {
+            droppedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full or the listener
+     * was closed.
+     *
+     * @return The dropped message count.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * Stops accepting messages, delivers the ones still waiting and stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Messages reported while the thread was stopping
+        Message message;
+        while ((message = queue.poll()) != null) {
+            sink.report(message.level, message.text);
+        }
+    }
+
+    /**
+     * Delivers messages until the listener is closed and the queue is empty.
+     */
+    private void deliverMessages() {
+        while (true) {
+            Message message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                // Closed: deliver what is left, then stop
+                while ((message = queue.poll()) != null) {
+                    sink.report(message.level, message.text);
+                }
+                return;
+            }
+            sink.report(message.level, message.text);
+        }
+    }
+
+    /**
+     * A message waiting to be delivered.
+     */
+    private static class Message {
+        private final DiagnosticLevel level;
+        private final String text;
+
+        /**
+         * Constructs a waiting message.
+         *
+         * @param level The level of the message.
+         * @param text The message.
+         */
+        private Message(DiagnosticLevel level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Finds a route between two airports by searching forward from the origin and backward
+ * from the destination until the two searches meet.
+ * <p>
+ * Both sides search over (airport, fuel level) states like FuelLabelSearch. The forward
+ * side keeps the fuel left on arrival at an airport. Refuelling depends on the arrival
+ * airport, so the backward side keeps the fuel an airplane needs when it departs an
+ * airport instead: none if the next airport sells its fuel, otherwise the fuel for the
+ * leg plus what the next airport needs. A forward label is pruned by one that is at least
+ * as short with at least as much fuel, and a backward label by one that is at least as
+ * short and needs at most as much fuel. The two halves only join where a forward label
+ * has at least the fuel a backward label at the same airport needs.
+ * <p>
+ * The forward and backward frontiers can run on two threads. Labels are written and the
+ * other side's labels are read under one lock, so a meeting point is never missed.
+ * Each frontier borrows a SearchWorkspace for its labels and queue, so a search in the
+ * steady state allocates little besides the route it returns.
+ */
+public class BidirectionalRouteSearch {
+    private final RoutingGraph graph;
+    private final Airplane airplane;
+    private final boolean useHeuristic;
+    private final int fuelLevels;
+    private final int requiredFuelMask;
+    private final Object meetingLock = new Object();
+
+    private Frontier forward;
+    private Frontier backward;
+    private double bestDistance;
+    private int meetingForwardState;
+    private int meetingBackwardState;
+
+    /**
+     * Constructs a bidirectional search over a graph for one airplane.
+     *
+     * @param graph        the graph to search
+     * @param airplane     the airplane used for the flight
+     * @param useHeuristic whether each side is guided by the straight-line distance to the other end
+     * @param fuelLevels   the number of fuel levels the tank is divided into
+     */
+    public BidirectionalRouteSearch(RoutingGraph graph, Airplane airplane, boolean useHeuristic, int fuelLevels) {
+        this.graph = graph;
+        this.airplane = airplane;
+        this.useHeuristic = useHeuristic;
+        this.fuelLevels = Math.max(1, fuelLevels);
+        this.requiredFuelMask = airplane.getRequiredFuelMask();
+    }
+
+    /**
+     * Searches for a route between two airports.
+     *
+     * @param fromId     the id of the starting airport
+     * @param toId       the id of the destination airport
+     * @param parallel   whether the backward frontier runs on its own thread
+     * @param statistics the statistics to record the search's work in
+     * @return the route, or null if the two sides did not join into a route that keeps to the
+     *         fuel rules, in which case the caller should search another way
+     */
+    public ArrayList<Edge> search(int fromId, int toId, boolean parallel, SearchStatistics statistics) {
+        forward = new Frontier(true, graph.getAirport(toId));
+        backward = new Frontier(false, graph.getAirport(fromId));
+        forward.other = backward;
+        backward.other = forward;
+        bestDistance = Double.POSITIVE_INFINITY;
+        meetingForwardState = -1;
+        meetingBackwardState = -1;
+
+        try {
+            return run(fromId, toId, parallel, statistics);
+        } finally {
+            SearchWorkspace.release(forward.workspace);
+            SearchWorkspace.release(backward.workspace);
+            forward = null;
+            backward = null;
+        }
+    }
+
+    /**
+     * Runs both frontiers until they have found the shortest route they can join into.
+     *
+     * @param fromId     the id of the starting airport
+     * @param toId       the id of the destination airport
+     * @param parallel   whether the backward frontier runs on its own thread
+     * @param statistics the statistics to record the search's work in
+     * @return the route, or null if the two sides did not join into a route that keeps to the fuel rules
+     */
+    private ArrayList<Edge> run(int fromId, int toId, boolean parallel, SearchStatistics statistics) {
+        forward.start(fromId, airplane.getTankSize());
+        backward.start(toId, 0.0);
+
+        if (parallel) {
+            CompletableFuture<Void> backwardRun = CompletableFuture.runAsync(() -> runFrontier(backward));
+            runFrontier(forward);
+            backwardRun.join();
+        } else {
+            // Always advance the side with the smaller queue key
+            while (!shouldStop()) {
+                if (forward.topKey <= backward.topKey) {
+                    forward.step();
+                } else {
+                    backward.step();
+                }
+            }
+        }
+
+        forward.addCounts(statistics);
+        backward.addCounts(statistics);
+
+        if (meetingForwardState < 0) {
+            return null;
+        }
+        ArrayList<Edge> route = buildRoute();
+        return isFlyable(route, airplane) ? route : null;
+    }
+
+    /**
+     * Advances one frontier until the search is finished, for use on its own thread.
+     *
+     * @param frontier the frontier to run
+     */
+    private void runFrontier(Frontier frontier) {
+        while (!shouldStop()) {
+            frontier.step();
+        }
+    }
+
+    /**
+     * Returns whether no unexplored route can be shorter than the best one found.
+     * With plain Dijkstra that is when the two smallest queue keys add up to the best
+     * distance; with A* each key is already a bound for the whole route.
+     *
+     * @return true if the search is finished
+     */
+    private boolean shouldStop() {
+        synchronized (meetingLock) {
+            if (useHeuristic) {
+                return forward.topKey >= bestDistance || backward.topKey >= bestDistance;
+            }
+            return forward.topKey + backward.topKey >= bestDistance;
+        }
+    }
+
+    /**
+     * Joins the forward path to the meeting airport with the backward path from it.
+     *
+     * @return the legs of the route in order
+     */
+    private ArrayList<Edge> buildRoute() {
+        ArrayList<Edge> route = new ArrayList<>();
+        int state = meetingForwardState;
+        while (forward.workspace.getPreviousState(state) >= 0) {
+            int previous = forward.workspace.getPreviousState(state);
+            route.add(new Edge(graph.getAirport(previous / fuelLevels), graph.getAirport(state / fuelLevels),
+                    forward.workspace.getLegDistance(state)));
+            state = previous;
+        }
+        Collections.reverse(route);
+
+        state = meetingBackwardState;
+        while (backward.workspace.getPreviousState(state) >= 0) {
+            int next = backward.workspace.getPreviousState(state);
+            route.add(new Edge(graph.getAirport(state / fuelLevels), graph.getAirport(next / fuelLevels),
+                    backward.workspace.getLegDistance(state)));
+            state = next;
+        }
+        return route;
+    }
+
+    /**
+     * Checks a route against the refuelling rules of findRoute, starting with a full tank.
+     *
+     * @param route    the legs of the route
+     * @param airplane the airplane used for the flight
+     * @return true if every leg can be flown
+     */
+    static boolean isFlyable(ArrayList<Edge> route, Airplane airplane) {
+        double fuel = airplane.getTankSize();
+        for (Edge leg : route) {
+            double fuelRequired = airplane.getFuelRequired(leg.getDistance());
+            boolean canRefuel = airplane.canRefuelAt(leg.getDestinationNode());
+            if (fuelRequired > airplane.getTankSize() || (fuel < fuelRequired && !canRefuel)) {
+                return false;
+            }
+            fuel = canRefuel ? airplane.getTankSize() : fuel - fuelRequired;
+        }
+        return true;
+    }
+
+    /**
+     * One direction of the search over (airport, fuel level) states. Each frontier only
+     * writes its own workspace, and only reads the other frontier's workspace while holding
+     * the meeting lock. Going backward, a label's previous state in the workspace is the
+     * next state on the route.
+     */
+    private class Frontier {
+        private final boolean isForward;
+        private final Airport target; // The airport at the other end, for the heuristic
+        // Labels hold the fuel on arrival going forward, and the fuel needed on departure going backward
+        private final SearchWorkspace workspace;
+        private final IndexedMinHeap queue;
+        private final NeighbourRow neighbours;
+        private Frontier other;
+        private double topKey; // Guarded by meetingLock
+        private long expansions;
+        private long relaxations;
+        private long labelsCreated;
+        private long labelsPruned;
+
+        /**
+         * Constructs one side of the search.
+         *
+         * @param isForward whether this side searches from the origin
+         * @param target    the airport at the other end of the search
+         */
+        private Frontier(boolean isForward, Airport target) {
+            this.isForward = isForward;
+            this.target = target;
+            this.workspace = SearchWorkspace.acquire(graph.size(), fuelLevels);
+            this.queue = workspace.queue;
+            this.neighbours = workspace.neighbours;
+        }
+
+        /**
+         * Labels the start airport of this side and queues it.
+         *
+         * @param startId   the id of the airport this side starts from
+         * @param fuelValue the fuel on board going forward, or the fuel needed going backward
+         */
+        private void start(int startId, double fuelValue) {
+            int state = startId * fuelLevels + levelOf(fuelValue);
+            setLabel(state, 0.0, fuelValue, -1, 0.0);
+            queue.insertOrDecrease(state, keyOf(startId, 0.0));
+            synchronized (meetingLock) {
+                topKey = queue.peekKey();
+            }
+        }
+
+        /**
+         * Expands the state with the smallest key on this side.
+         */
+        private void step() {
+            if (queue.isEmpty()) {
+                return;
+            }
+            int state = queue.poll();
+            int current = state / fuelLevels;
+            expansions++;
+            if (isForward) {
+                graph.loadNeighbours(current, neighbours);
+            } else {
+                graph.loadReverseNeighbours(current, neighbours);
+            }
+            for (int i = neighbours.start; i < neighbours.end; i++) {
+                relaxations++;
+                if (isForward) {
+                    relaxForward(state, neighbours.targets[i], neighbours.distances[i]);
+                } else {
+                    relaxBackward(state, neighbours.targets[i], neighbours.distances[i]);
+                }
+            }
+            synchronized (meetingLock) {
+                topKey = queue.peekKey();
+            }
+        }
+
+        /**
+         * Relaxes the leg from the expanded airport to the next one, using the same fuel
+         * rules as findRoute.
+         *
+         * @param state       the expanded state
+         * @param next        the id of the airport the leg leads to
+         * @param legDistance the length of the leg in knots
+         */
+        private void relaxForward(int state, int next, double legDistance) {
+            double fuelRequired = airplane.getFuelRequired(legDistance);
+            boolean canRefuel = (graph.getFuelMask(next) & requiredFuelMask) != 0;
+            double usableFuel = workspace.getFuel(state);
+            if (usableFuel < fuelRequired) {
+                if (!canRefuel || airplane.getTankSize() < fuelRequired) {
+                    return;
+                }
+                usableFuel = airplane.getTankSize();
+            }
+            double newFuel = canRefuel ? airplane.getTankSize() : usableFuel - fuelRequired;
+            addLabel(next, workspace.getDistance(state) + legDistance, newFuel, state, legDistance);
+        }
+
+        /**
+         * Relaxes the leg from a previous airport into the expanded one, working out the
+         * fuel the airplane needs when it leaves the previous airport.
+         *
+         * @param state       the expanded state
+         * @param previous    the id of the airport the leg starts from
+         * @param legDistance the length of the leg in knots
+         */
+        private void relaxBackward(int state, int previous, double legDistance) {
+            double fuelRequired = airplane.getFuelRequired(legDistance);
+            if (fuelRequired > airplane.getTankSize()) {
+                return;
+            }
+            // Arriving somewhere that sells fuel always allows the leg, otherwise the fuel must be on board
+            boolean canRefuel = (graph.getFuelMask(state / fuelLevels) & requiredFuelMask) != 0;
+            double fuelNeeded = canRefuel ? 0.0 : fuelRequired + workspace.getFuel(state);
+            if (fuelNeeded > airplane.getTankSize()) {
+                return;
+            }
+            addLabel(previous, workspace.getDistance(state) + legDistance, fuelNeeded, state, legDistance);
+        }
+
+        /**
+         * Adds a label at an airport unless another label there makes it redundant.
+         *
+         * @param airport     the id of the airport
+         * @param distance    the distance from this side's start airport
+         * @param fuelValue   the fuel on arrival, or the fuel needed on departure going backward
+         * @param link        the previous or next state on the path
+         * @param legDistance the length of the leg between the airport and its link
+         */
+        private void addLabel(int airport, double distance, double fuelValue, int link, double legDistance) {
+            int level = levelOf(fuelValue);
+            if (isDominated(airport, level, distance, fuelValue)) {
+                labelsPruned++;
+                return;
+            }
+            int state = airport * fuelLevels + level;
+            setLabel(state, distance, fuelValue, link, legDistance);
+            queue.insertOrDecrease(state, keyOf(airport, distance));
+        }
+
+        /**
+         * Returns whether a new label can be dropped because its own level already holds
+         * a label that is at least as short, or a label with better fuel is at least as
+         * short. Better fuel means more fuel going forward and less fuel needed going
+         * backward, so only the levels above or below the new label are checked.
+         *
+         * @param airport   the id of the airport
+         * @param level     the fuel level of the new label
+         * @param distance  the distance of the new label
+         * @param fuelValue the fuel of the new label
+         * @return true if the new label should be pruned
+         */
+        private boolean isDominated(int airport, int level, double distance, double fuelValue) {
+            int firstState = airport * fuelLevels;
+            if (workspace.getDistance(firstState + level) <= distance) {
+                return true;
+            }
+            int from = firstState + (isForward ? level + 1 : 0);
+            int to = firstState + (isForward ? fuelLevels : level);
+            for (int state = from; state < to; state++) {
+                if (workspace.getDistance(state) > distance) {
+                    continue;
+                }
+                double stateFuel = workspace.getFuel(state);
+                if (isForward ? stateFuel >= fuelValue : stateFuel <= fuelValue) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Stores a label and checks whether it joins up with any of the other side's
+         * labels at the same airport into a better route.
+         *
+         * @param state       the state to label
+         * @param distance    the distance from this side's start airport
+         * @param fuelValue   the fuel on arrival, or the fuel needed on departure going backward
+         * @param link        the previous or next state on the path
+         * @param legDistance the length of the leg between the airport and its link
+         */
+        private void setLabel(int state, double distance, double fuelValue, int link, double legDistance) {
+            synchronized (meetingLock) {
+                workspace.setLabel(state, distance, fuelValue, link, legDistance);
+                labelsCreated++;
+
+                int firstState = (state / fuelLevels) * fuelLevels;
+                for (int otherState = firstState; otherState < firstState + fuelLevels; otherState++) {
+                    double otherDistance = other.workspace.getDistance(otherState);
+                    if (otherDistance == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    double otherFuel = other.workspace.getFuel(otherState);
+                    double arrivalFuel = isForward ? fuelValue : otherFuel;
+                    double neededFuel = isForward ? otherFuel : fuelValue;
+                    if (arrivalFuel >= neededFuel && distance + otherDistance < bestDistance) {
+                        bestDistance = distance + otherDistance;
+                        meetingForwardState = isForward ? state : otherState;
+                        meetingBackwardState = isForward ? otherState : state;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the fuel level of a fuel amount.
+         *
+         * @param fuelValue the fuel on board, or the fuel needed going backward
+         * @return the fuel level
+         */
+        private int levelOf(double fuelValue) {
+            return FuelLabelSearch.fuelLevel(fuelValue, airplane.getTankSize(), fuelLevels);
+        }
+
+        /**
+         * Returns the queue key of an airport: its distance, plus the straight-line
+         * distance to the other end when a heuristic is used.
+         *
+         * @param id       the id of the airport
+         * @param distance the distance from this side's start airport
+         * @return the key to queue the airport with
+         */
+        private double keyOf(int id, double distance) {
+            if (!useHeuristic) {
+                return distance;
+            }
+            if (!workspace.hasRemainingEstimate(id)) {
+                workspace.setRemainingEstimate(id, Edge.distanceBetween(graph.getAirport(id), target));
+            }
+            return distance + workspace.getRemainingEstimate(id);
+        }
+
+        /**
+         * Adds this side's work to the search statistics.
+         *
+         * @param statistics the statistics of the whole search
+         */
+        private void addCounts(SearchStatistics statistics) {
+            statistics.addWork(expansions, relaxations);
+            statistics.addHeapCounts(queue);
+            statistics.addLabels(labelsCreated, labelsPruned);
+        }
+    }
+}
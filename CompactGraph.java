@@ -0,0 +1,178 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An immutable snapshot of the airport graph stored in compressed sparse row (CSR) form.
+ * Airports are referred to by int ids, and the outgoing connections of airport {@code id}
+ * are stored in positions {@code offsets[id]} to {@code offsets[id + 1] - 1} of the
+ * target, distance and heading arrays. No Edge objects are kept; getEdge creates one
+ * on request for code that still works with edges. A reversed copy of the arrays for
+ * backward searches is built the first time it is needed.
+ */
+public class CompactGraph implements RoutingGraph {
+    private final Airport[] airports;
+    private final HashMap<String, Integer> airportIds;
+    private final int[] fuelMasks;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] distances;
+    private final float[] headings;
+    private volatile CompactGraph reverseGraph;
+
+    /**
+     * Constructs a CompactGraph from already filled CSR arrays.
+     *
+     * @param airports   the airports indexed by id, null for ids that are not in use
+     * @param airportIds a map from ICAO identifier to airport id
+     * @param offsets    the start of each airport's connections, with one extra trailing entry
+     * @param targets    the destination airport id of each connection
+     * @param distances  the distance of each connection in knots
+     * @param headings   the heading of each connection in degrees
+     */
+    CompactGraph(Airport[] airports, HashMap<String, Integer> airportIds, int[] offsets, int[] targets,
+            double[] distances, float[] headings) {
+        this.airports = airports;
+        this.airportIds = airportIds;
+        this.fuelMasks = FuelType.masksOf(airports);
+        this.offsets = offsets;
+        this.targets = targets;
+        this.distances = distances;
+        this.headings = headings;
+    }
+
+    /**
+     * Returns the number of airport ids in the graph, including ids that are not in use.
+     *
+     * @return the size of the id range
+     */
+    @Override
+    public int size() {
+        return airports.length;
+    }
+
+    /**
+     * Returns the airport with the given id.
+     *
+     * @param id the airport id
+     * @return the Airport, or null if the id is not in use
+     */
+    @Override
+    public Airport getAirport(int id) {
+        return airports[id];
+    }
+
+    /**
+     * Returns the id of the airport with the given ICAO identifier.
+     *
+     * @param identifier the ICAO identifier of the airport
+     * @return the airport id, or -1 if no airport in the graph has the identifier
+     */
+    @Override
+    public int getId(String identifier) {
+        Integer id = airportIds.get(identifier);
+        return (id == null) ? -1 : id;
+    }
+
+    @Override
+    public int getFuelMask(int id) {
+        return fuelMasks[id];
+    }
+
+    @Override
+    public void loadNeighbours(int id, NeighbourRow row) {
+        row.share(targets, distances, offsets[id], offsets[id + 1]);
+    }
+
+    @Override
+    public void loadReverseNeighbours(int id, NeighbourRow row) {
+        CompactGraph reverse = reverseGraph;
+        if (reverse == null) {
+            reverse = getReverseGraph();
+        }
+        reverse.loadNeighbours(id, row);
+    }
+
+    /**
+     * Returns the graph with every connection reversed, building it on first use.
+     *
+     * @return the reversed CompactGraph
+     */
+    private synchronized CompactGraph getReverseGraph() {
+        if (reverseGraph != null) {
+            return reverseGraph;
+        }
+        int nodeCount = airports.length;
+        int[] reverseOffsets = new int[nodeCount + 1];
+        for (int edge = 0; edge < targets.length; edge++) {
+            reverseOffsets[targets[edge] + 1]++;
+        }
+        for (int id = 0; id < nodeCount; id++) {
+            reverseOffsets[id + 1] += reverseOffsets[id];
+        }
+
+        int[] reverseTargets = new int[targets.length];
+        double[] reverseDistances = new double[targets.length];
+        float[] reverseHeadings = new float[targets.length];
+        int[] next = Arrays.copyOf(reverseOffsets, nodeCount);
+        for (int id = 0; id < nodeCount; id++) {
+            for (int edge = offsets[id]; edge < offsets[id + 1]; edge++) {
+                int position = next[targets[edge]]++;
+                reverseTargets[position] = id;
+                reverseDistances[position] = distances[edge];
+                reverseHeadings[position] = headings[edge];
+            }
+        }
+        reverseGraph = new CompactGraph(airports, airportIds, reverseOffsets, reverseTargets, reverseDistances,
+                reverseHeadings);
+        return reverseGraph;
+    }
+
+    /**
+     * Returns the row offsets of the graph. Connections of airport {@code id} run from
+     * {@code offsets[id]} (inclusive) to {@code offsets[id + 1]} (exclusive).
+     *
+     * @return the offsets array, which must not be modified
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the destination airport id of every connection.
+     *
+     * @return the targets array, which must not be modified
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * Returns the distance in knots of every connection.
+     *
+     * @return the distances array, which must not be modified
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Returns the heading in degrees of every connection.
+     *
+     * @return the headings array, which must not be modified
+     */
+    public float[] getHeadings() {
+        return headings;
+    }
+
+    /**
+     * Creates an Edge view of a single connection.
+     *
+     * @param originId  the id of the airport the connection starts from
+     * @param edgeIndex the position of the connection in the CSR arrays
+     * @return a new Edge holding the stored distance and heading
+     */
+    public Edge getEdge(int originId, int edgeIndex) {
+        return new Edge(airports[originId], airports[targets[edgeIndex]], distances[edgeIndex],
+                headings[edgeIndex]);
+    }
+}
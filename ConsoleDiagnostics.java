@@ -0,0 +1,25 @@
+/**
+ * A DiagnosticListener that prints messages up to a given level to the console.
+ */
+public class ConsoleDiagnostics implements DiagnosticListener {
+    private final DiagnosticLevel maxLevel;
+
+    /**
+     * Constructs a listener that prints messages up to the given level.
+     *
+     * @param maxLevel The most detailed level to print.
+     */
+    public ConsoleDiagnostics(DiagnosticLevel maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    @Override
+    public boolean isEnabled(DiagnosticLevel level) {
+        return level.compareTo(maxLevel) <= 0;
+    }
+
+    @Override
+    public void report(DiagnosticLevel level, String message) {
+        System.out.println(message);
+    }
+}
@@ -0,0 +1,981 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A Contraction Hierarchy over the airports for one airplane performance profile, that is
+ * one range and one fuel type. Airports are contracted one at a time from least to most
+ * important, and a shortcut is added between two neighbours of a contracted airport when
+ * the route through it is the only shortest one. A query is then a small bidirectional
+ * search that only follows connections to more important airports.
+ * <p>
+ * The hierarchy cannot track the fuel on board, so it only keeps legs that can be flown
+ * with any amount of fuel: legs within range that start or end at an airport selling the
+ * profile's fuel. The origin is the one place the tank is known to be full, so a query
+ * also tries every leg within range from the origin. Every route it returns keeps to the
+ * refuelling rules of findRoute, but it is only the shortest one among those routes: a
+ * shorter route that passes two airports in a row that do not sell the fuel after leaving
+ * the origin cannot be found, and a longer route through the hierarchy is returned instead.
+ * findRoute is only needed when the hierarchy has no route at all.
+ * <p>
+ * Hierarchies are immutable once built, so one hierarchy can answer queries from several
+ * threads. They can be saved to and loaded from a binary file, together with a fingerprint
+ * of the airports they were built from and a CRC32 checksum of the file's contents.
+ */
+public class ContractionHierarchy {
+    private static final int FILE_MAGIC = 0x43484731; // "CHG1"
+    private static final int FILE_VERSION = 3;
+    private static final int EDGE_BYTES = 16; // Size of one connection in the file
+    private static final int WITNESS_SETTLE_LIMIT = 50; // Airports settled by one witness search at most
+
+    private final double range;
+    private final String fuelType;
+    private final int fuelMask;
+    private final long fingerprint;
+    private final Airport[] airports;
+    private final HashMap<String, Integer> airportIds; // Hierarchy id by ICAO identifier
+    private final int[] ranks;
+    private final int[] offsets; // Upward connections of each airport in CSR form
+    private final int[] targets;
+    private final double[] distances;
+    private final int[] middles; // The airport a shortcut passes through, -1 for a direct leg
+    private final SpatialGrid noFuelGrid; // The airports that do not sell the profile's fuel
+
+    /**
+     * Constructs a hierarchy from its already filled arrays.
+     *
+     * @param range       the range of the profile in knots
+     * @param fuelType    the fuel type of the profile
+     * @param fingerprint the fingerprint of the airports the hierarchy was built from
+     * @param airports    the airports indexed by hierarchy id
+     * @param ranks       the contraction order of each airport
+     * @param offsets     the start of each airport's upward connections, with one extra trailing entry
+     * @param targets     the destination of each upward connection
+     * @param distances   the distance of each upward connection in knots
+     * @param middles     the airport each shortcut passes through, or -1
+     */
+    private ContractionHierarchy(double range, String fuelType, long fingerprint, Airport[] airports, int[] ranks,
+            int[] offsets, int[] targets, double[] distances, int[] middles) {
+        this.range = range;
+        this.fuelType = fuelType;
+        this.fuelMask = fuelMaskOf(fuelType);
+        this.fingerprint = fingerprint;
+        this.airports = airports;
+        this.ranks = ranks;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.distances = distances;
+        this.middles = middles;
+        this.airportIds = new HashMap<>();
+        this.noFuelGrid = new SpatialGrid(range);
+        for (int id = 0; id < airports.length; id++) {
+            airportIds.put(airports[id].getIdentifier(), id);
+            if (!sellsFuel(id)) {
+                noFuelGrid.add(id, airports[id].getLatitude(), airports[id].getLongitude());
+            }
+        }
+    }
+
+    /**
+     * Builds the hierarchy for one profile over the airports of a graph. Only the airports
+     * are used; the legs are worked out again from the profile's range.
+     *
+     * @param graph    the graph whose airports are used
+     * @param range    the range of the profile in knots
+     * @param fuelType the fuel type of the profile
+     * @return the new hierarchy
+     */
+    public static ContractionHierarchy build(RoutingGraph graph, double range, String fuelType) {
+        ArrayList<Airport> airportList = new ArrayList<>();
+        for (int id = 0; id < graph.size(); id++) {
+            if (graph.getAirport(id) != null) {
+                airportList.add(graph.getAirport(id));
+            }
+        }
+        Airport[] airports = airportList.toArray(new Airport[0]);
+        int nodeCount = airports.length;
+
+        // Legs that can be flown whatever fuel is on board
+        RemainingGraph remaining = new RemainingGraph(nodeCount);
+        boolean[] sellsFuel = new boolean[nodeCount];
+        int fuelMask = fuelMaskOf(fuelType);
+        SpatialGrid grid = new SpatialGrid(range);
+        for (int id = 0; id < nodeCount; id++) {
+            sellsFuel[id] = (airports[id].getFuelMask() & fuelMask) != 0;
+            grid.add(id, airports[id].getLatitude(), airports[id].getLongitude());
+        }
+        for (int id = 0; id < nodeCount; id++) {
+            for (int other : grid.getCandidates(airports[id].getLatitude(), airports[id].getLongitude())) {
+                if (other <= id || !(sellsFuel[id] || sellsFuel[other])) {
+                    continue;
+                }
+                double distance = Edge.distanceBetween(airports[id], airports[other]);
+                if (distance <= range) {
+                    remaining.addLeg(id, other, distance);
+                }
+            }
+        }
+
+        // Contract the airports in order of priority, recalculating each one when it is taken
+        HashMap<Long, Integer> shortcutMiddles = new HashMap<>();
+        int[] contractedNeighbours = new int[nodeCount];
+        int[] ranks = new int[nodeCount];
+        int[][] upwardTargets = new int[nodeCount][];
+        double[][] upwardDistances = new double[nodeCount][];
+        WitnessSearch witness = new WitnessSearch(nodeCount);
+        IndexedMinHeap order = new IndexedMinHeap(nodeCount);
+        for (int id = 0; id < nodeCount; id++) {
+            order.insertOrDecrease(id, priority(id, remaining, contractedNeighbours, witness));
+        }
+        int rank = 0;
+        while (!order.isEmpty()) {
+            int node = order.poll();
+            double priority = priority(node, remaining, contractedNeighbours, witness);
+            if (!order.isEmpty() && priority > order.peekKey()) {
+                order.insertOrDecrease(node, priority);
+                continue;
+            }
+            addShortcuts(node, remaining, witness, shortcutMiddles, true);
+            // Every neighbour left is contracted later, so its legs are the airport's upward connections
+            int degree = remaining.sizes[node];
+            upwardTargets[node] = Arrays.copyOf(remaining.targets[node], degree);
+            upwardDistances[node] = Arrays.copyOf(remaining.distances[node], degree);
+            for (int i = 0; i < degree; i++) {
+                contractedNeighbours[upwardTargets[node][i]]++;
+            }
+            remaining.removeNode(node);
+            ranks[node] = rank++;
+        }
+
+        int[] offsets = new int[nodeCount + 1];
+        for (int id = 0; id < nodeCount; id++) {
+            offsets[id + 1] = offsets[id] + upwardTargets[id].length;
+        }
+        int[] targets = new int[offsets[nodeCount]];
+        double[] distances = new double[offsets[nodeCount]];
+        int[] middles = new int[offsets[nodeCount]];
+        for (int id = 0; id < nodeCount; id++) {
+            for (int i = 0; i < upwardTargets[id].length; i++) {
+                int position = offsets[id] + i;
+                targets[position] = upwardTargets[id][i];
+                distances[position] = upwardDistances[id][i];
+                middles[position] = shortcutMiddles.getOrDefault(pairKey(id, targets[position]), -1);
+            }
+        }
+        return new ContractionHierarchy(range, fuelType, fingerprint(graph), airports, ranks, offsets, targets,
+                distances, middles);
+    }
+
+    /**
+     * Returns the priority of contracting an airport now: the shortcuts it would add,
+     * minus the legs it would remove, plus the neighbours already contracted so that
+     * contraction spreads evenly over the map.
+     *
+     * @param node                 the airport to rate
+     * @param remaining            the airports not contracted yet and their legs
+     * @param contractedNeighbours how many neighbours of each airport are already contracted
+     * @param witness              the witness search to reuse
+     * @return the priority, lower is contracted first
+     */
+    private static double priority(int node, RemainingGraph remaining, int[] contractedNeighbours,
+            WitnessSearch witness) {
+        int shortcuts = addShortcuts(node, remaining, witness, null, false);
+        return shortcuts - remaining.sizes[node] + contractedNeighbours[node];
+    }
+
+    /**
+     * Finds the shortcuts that contracting an airport needs, and adds them if asked to.
+     * A shortcut between two neighbours is needed unless a direct leg or a witness path
+     * avoiding the airport is at most as long as the path through it.
+     *
+     * @param node            the airport being contracted
+     * @param remaining       the airports not contracted yet and their legs
+     * @param witness         the witness search to reuse
+     * @param shortcutMiddles the airport each shortcut passes through, keyed by pairKey
+     * @param add             whether to add the shortcuts or only count them
+     * @return the number of shortcuts needed
+     */
+    private static int addShortcuts(int node, RemainingGraph remaining, WitnessSearch witness,
+            HashMap<Long, Integer> shortcutMiddles, boolean add) {
+        int count = remaining.sizes[node];
+        int[] neighbours = Arrays.copyOf(remaining.targets[node], count);
+        double[] neighbourDistances = Arrays.copyOf(remaining.distances[node], count);
+
+        int shortcuts = 0;
+        int[] witnessTargets = new int[count];
+        double[] witnessLimits = new double[count];
+        for (int a = 0; a < count; a++) {
+            int from = neighbours[a];
+            double[] direct = witness.loadDirectLegs(from, remaining);
+            // The direct leg usually wins, so only search for the pairs that have no such leg
+            int witnessCount = 0;
+            for (int b = a + 1; b < count; b++) {
+                double via = neighbourDistances[a] + neighbourDistances[b];
+                if (direct[neighbours[b]] > via) {
+                    witnessTargets[witnessCount] = neighbours[b];
+                    witnessLimits[witnessCount] = via;
+                    witnessCount++;
+                }
+            }
+            if (witnessCount == 0) {
+                continue;
+            }
+            witness.run(from, node, witnessTargets, witnessLimits, witnessCount, remaining);
+            for (int i = 0; i < witnessCount; i++) {
+                int to = witnessTargets[i];
+                double via = witnessLimits[i];
+                if (witness.distanceTo(to) <= via) {
+                    continue;
+                }
+                shortcuts++;
+                if (add) {
+                    remaining.addLeg(from, to, via);
+                    shortcutMiddles.put(pairKey(from, to), node);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Returns a key for an unordered pair of airports.
+     *
+     * @param a the id of one airport
+     * @param b the id of the other airport
+     * @return the same key for (a, b) and (b, a)
+     */
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    /**
+     * Finds the shortest route between two airports using the legs the hierarchy keeps and
+     * the legs from the origin.
+     *
+     * @param fromAirport the starting airport
+     * @param toAirport   the destination airport
+     * @param statistics  the statistics to record the search's work in
+     * @return the legs of the route, or an empty list if the hierarchy has no route
+     */
+    public ArrayList<Edge> findRoute(Airport fromAirport, Airport toAirport, SearchStatistics statistics) {
+        Integer fromId = airportIds.get(fromAirport.getIdentifier());
+        Integer toId = airportIds.get(toAirport.getIdentifier());
+        if (fromId == null || toId == null || fromId.equals(toId)) {
+            return new ArrayList<>();
+        }
+
+        QueryWorkspace workspace = QueryWorkspace.acquire(airports.length);
+        try {
+            return findRoute(workspace, fromId, toId, statistics);
+        } finally {
+            QueryWorkspace.release(workspace);
+        }
+    }
+
+    /**
+     * Runs one query in a workspace.
+     *
+     * @param workspace  the workspace to search in
+     * @param fromId     the hierarchy id of the starting airport
+     * @param toId       the hierarchy id of the destination airport
+     * @param statistics the statistics to record the search's work in
+     * @return the legs of the route, or an empty list if the hierarchy has no route
+     */
+    private ArrayList<Edge> findRoute(QueryWorkspace workspace, int fromId, int toId, SearchStatistics statistics) {
+        IndexedMinHeap[] queues = workspace.queues;
+        workspace.setLabel(0, fromId, 0.0, -1);
+        workspace.setLabel(1, toId, 0.0, -1);
+        queues[0].insertOrDecrease(fromId, 0.0);
+        queues[1].insertOrDecrease(toId, 0.0);
+
+        // The tank is full at the origin, so every leg within range can be flown from it, even
+        // to an airport without fuel. Those legs are not in the hierarchy and are added here.
+        Airport origin = airports[fromId];
+        if (!sellsFuel(fromId)) {
+            for (int id : noFuelGrid.getCandidates(origin.getLatitude(), origin.getLongitude())) {
+                double distance = Edge.distanceBetween(origin, airports[id]);
+                if (id != fromId && distance <= range) {
+                    workspace.setLabel(0, id, distance, fromId);
+                    workspace.markOriginLeg(id);
+                    queues[0].insertOrDecrease(id, distance);
+                }
+            }
+        }
+
+        // Both sides only go upward, so each one stops once its queue cannot beat the best meeting
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int meetingNode = -1;
+        while (queues[0].peekKey() < bestDistance || queues[1].peekKey() < bestDistance) {
+            int side = (queues[0].peekKey() <= queues[1].peekKey()) ? 0 : 1;
+            int node = queues[side].poll();
+            statistics.countExpansion();
+            double nodeDistance = workspace.getDistance(side, node);
+            double meetingDistance = nodeDistance + workspace.getDistance(1 - side, node);
+            if (meetingDistance < bestDistance) {
+                bestDistance = meetingDistance;
+                meetingNode = node;
+            }
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                statistics.countRelaxation();
+                int next = targets[edge];
+                double newDistance = nodeDistance + distances[edge];
+                if (newDistance < workspace.getDistance(side, next)) {
+                    workspace.setLabel(side, next, newDistance, node);
+                    queues[side].insertOrDecrease(next, newDistance);
+                    double otherDistance = workspace.getDistance(1 - side, next);
+                    if (newDistance + otherDistance < bestDistance) {
+                        bestDistance = newDistance + otherDistance;
+                        meetingNode = next;
+                    }
+                }
+            }
+        }
+        statistics.addHeapCounts(queues[0]);
+        statistics.addHeapCounts(queues[1]);
+
+        ArrayList<Edge> route = new ArrayList<>();
+        if (meetingNode < 0) {
+            return route;
+        }
+        ArrayList<Integer> path = new ArrayList<>();
+        for (int node = meetingNode; node >= 0; node = workspace.getParent(0, node)) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        for (int node = workspace.getParent(1, meetingNode); node >= 0; node = workspace.getParent(1, node)) {
+            path.add(node);
+        }
+        for (int i = 0; i < path.size() - 1; i++) {
+            int from = path.get(i);
+            int to = path.get(i + 1);
+            if (i == 0 && workspace.isOriginLeg(to)) {
+                route.add(new Edge(airports[from], airports[to], workspace.getDistance(0, to)));
+            } else {
+                unpack(from, to, route);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Returns whether an airport sells the fuel of the hierarchy's profile.
+     *
+     * @param id the hierarchy id of the airport
+     * @return true if the airplane can refuel there
+     */
+    private boolean sellsFuel(int id) {
+        return (airports[id].getFuelMask() & fuelMask) != 0;
+    }
+
+    /**
+     * Returns the fuel mask of a profile's fuel type.
+     *
+     * @param fuelType the name of the fuel type
+     * @return the fuel mask, 0 if the name is not a known fuel type
+     */
+    private static int fuelMaskOf(String fuelType) {
+        FuelType type = FuelType.fromName(fuelType);
+        return (type == null) ? 0 : type.mask();
+    }
+
+    /**
+     * Adds the legs of a hierarchy connection to a route, replacing shortcuts by the two
+     * connections they were made from.
+     *
+     * @param from  the id of the airport the connection starts from
+     * @param to    the id of the airport the connection leads to
+     * @param route the route to add the legs to
+     */
+    private void unpack(int from, int to, ArrayList<Edge> route) {
+        // A connection is stored once, at its less important end
+        int lower = (ranks[from] < ranks[to]) ? from : to;
+        int upper = (lower == from) ? to : from;
+        for (int edge = offsets[lower]; edge < offsets[lower + 1]; edge++) {
+            if (targets[edge] != upper) {
+                continue;
+            }
+            if (middles[edge] < 0) {
+                route.add(new Edge(airports[from], airports[to], distances[edge]));
+            } else {
+                unpack(from, middles[edge], route);
+                unpack(middles[edge], to, route);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Returns whether the hierarchy was built for a profile and the current airports.
+     *
+     * @param otherRange       the range of the profile in knots
+     * @param otherFuelType    the fuel type of the profile
+     * @param otherFingerprint the fingerprint of the current airports
+     * @return true if the hierarchy can answer queries for the profile
+     */
+    public boolean matches(double otherRange, String otherFuelType, long otherFingerprint) {
+        return range == otherRange && fuelType.equals(otherFuelType) && fingerprint == otherFingerprint;
+    }
+
+    /**
+     * Returns the diagonal of the box around all airports of a graph. No leg is longer
+     * than the diagonal, so every range longer than it leads to the same hierarchy and
+     * can share it.
+     *
+     * @param graph the graph whose airports are used
+     * @return the diagonal in knots, or infinity if the graph has no airports
+     */
+    public static double diagonal(RoutingGraph graph) {
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int id = 0; id < graph.size(); id++) {
+            Airport airport = graph.getAirport(id);
+            if (airport != null) {
+                minLatitude = Math.min(minLatitude, airport.getLatitude());
+                maxLatitude = Math.max(maxLatitude, airport.getLatitude());
+                minLongitude = Math.min(minLongitude, airport.getLongitude());
+                maxLongitude = Math.max(maxLongitude, airport.getLongitude());
+            }
+        }
+        if (minLatitude > maxLatitude) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.hypot(maxLatitude - minLatitude, maxLongitude - minLongitude) * Edge.KNOT_CONVERSION;
+    }
+
+    /**
+     * Returns a fingerprint of the airports of a graph. Any change to the position, fuel
+     * types or identifier of an airport, or to the set of airports, changes the fingerprint.
+     *
+     * @param graph the graph whose airports are used
+     * @return the fingerprint
+     */
+    public static long fingerprint(RoutingGraph graph) {
+        long fingerprint = 0;
+        int count = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            Airport airport = graph.getAirport(id);
+            if (airport == null) {
+                continue;
+            }
+            long hash = airport.getIdentifier().hashCode();
+            hash = hash * 31 + Double.hashCode(airport.getLatitude());
+            hash = hash * 31 + Double.hashCode(airport.getLongitude());
+            hash = hash * 31 + airport.getFuelMask();
+            fingerprint += mix(hash); // Summed so that the order of the airports does not matter
+            count++;
+        }
+        return mix(fingerprint + count);
+    }
+
+    /**
+     * Spreads the bits of a hash over the whole long.
+     *
+     * @param value the value to mix
+     * @return the mixed value
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Saves the hierarchy to a binary file, followed by a checksum of everything before it.
+     * The hierarchy is written to a temporary file of its own that is then moved into place,
+     * so neither a crash nor another save of the same file leaves it half written.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            write(tempFile);
+            MutationJournal.moveIntoPlace(tempFile, file);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath()); // Only left behind if the move failed
+        }
+    }
+
+    /**
+     * Writes the hierarchy and its checksum to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    private void write(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file)), crc))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeDouble(range);
+            out.writeUTF(fuelType);
+            out.writeLong(fingerprint);
+            out.writeInt(airports.length);
+            for (int id = 0; id < airports.length; id++) {
+                out.writeUTF(airports[id].getIdentifier());
+                out.writeInt(ranks[id]);
+                out.writeInt(offsets[id + 1]);
+            }
+            for (int edge = 0; edge < targets.length; edge++) {
+                out.writeInt(targets[edge]);
+                out.writeDouble(distances[edge]);
+                out.writeInt(middles[edge]);
+            }
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    /**
+     * Loads a hierarchy from a binary file, looking its airports up in a graph. Every count,
+     * offset and id is checked before it is used, and the checksum at the end must match,
+     * so a truncated or corrupt file is refused with an IOException.
+     *
+     * @param file  the file to read
+     * @param graph the graph holding the current airports
+     * @return the loaded hierarchy
+     * @throws IOException if the file cannot be read, is not a hierarchy, is corrupt, or names
+     *                     an unknown airport
+     */
+    public static ContractionHierarchy load(File file, RoutingGraph graph) throws IOException {
+        HashMap<String, Airport> airportsByIdentifier = new HashMap<>();
+        for (int id = 0; id < graph.size(); id++) {
+            Airport airport = graph.getAirport(id);
+            if (airport != null) {
+                airportsByIdentifier.put(airport.getIdentifier(), airport);
+            }
+        }
+        long maxEdgeCount = file.length() / EDGE_BYTES;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a contraction hierarchy file: " + file);
+            }
+            double range = in.readDouble();
+            String fuelType = in.readUTF();
+            long fingerprint = in.readLong();
+            int nodeCount = in.readInt();
+            if (nodeCount < 0 || nodeCount > airportsByIdentifier.size()) {
+                throw corrupt(file, "airport count " + nodeCount);
+            }
+            Airport[] airports = new Airport[nodeCount];
+            int[] ranks = new int[nodeCount];
+            int[] offsets = new int[nodeCount + 1];
+            for (int id = 0; id < nodeCount; id++) {
+                String identifier = in.readUTF();
+                // Removed so that an airport listed twice is refused as well
+                airports[id] = airportsByIdentifier.remove(identifier);
+                if (airports[id] == null) {
+                    throw new IOException("Unknown or repeated airport " + identifier + " in " + file);
+                }
+                ranks[id] = in.readInt();
+                offsets[id + 1] = in.readInt();
+                if (ranks[id] < 0 || ranks[id] >= nodeCount) {
+                    throw corrupt(file, "rank " + ranks[id]);
+                }
+                if (offsets[id + 1] < offsets[id] || offsets[id + 1] > maxEdgeCount) {
+                    throw corrupt(file, "connection offset " + offsets[id + 1]);
+                }
+            }
+            int edgeCount = offsets[nodeCount];
+            int[] targets = new int[edgeCount];
+            double[] distances = new double[edgeCount];
+            int[] middles = new int[edgeCount];
+            for (int edge = 0; edge < edgeCount; edge++) {
+                targets[edge] = in.readInt();
+                distances[edge] = in.readDouble();
+                middles[edge] = in.readInt();
+                if (targets[edge] < 0 || targets[edge] >= nodeCount || middles[edge] < -1
+                        || middles[edge] >= nodeCount) {
+                    throw corrupt(file, "connection " + edge);
+                }
+            }
+            int checksum = (int) crc.getValue();
+            if (in.readInt() != checksum || in.read() != -1) {
+                throw corrupt(file, "checksum mismatch");
+            }
+            return new ContractionHierarchy(range, fuelType, fingerprint, airports, ranks, offsets, targets,
+                    distances, middles);
+        }
+    }
+
+    /**
+     * Returns the exception for a hierarchy file whose contents do not make sense.
+     *
+     * @param file the file being read
+     * @param what what was wrong with it
+     * @return the exception to throw
+     */
+    private static IOException corrupt(File file, String what) {
+        return new IOException("Corrupt contraction hierarchy file " + file + ": " + what);
+    }
+
+    /**
+     * The legs between the airports that have not been contracted yet, kept in both
+     * directions in growable primitive arrays. Contracting an airport removes it from
+     * the lists of its neighbours, so searches never look at contracted airports.
+     */
+    private static class RemainingGraph {
+        private final int[][] targets;
+        private final double[][] distances;
+        private final int[] sizes;
+
+        /**
+         * Constructs a graph with no legs.
+         *
+         * @param nodeCount the number of airports
+         */
+        private RemainingGraph(int nodeCount) {
+            targets = new int[nodeCount][4];
+            distances = new double[nodeCount][4];
+            sizes = new int[nodeCount];
+        }
+
+        /**
+         * Adds a leg in both directions, or shortens it if it is already there.
+         *
+         * @param a        the id of one airport
+         * @param b        the id of the other airport
+         * @param distance the length of the leg in knots
+         */
+        private void addLeg(int a, int b, double distance) {
+            addHalf(a, b, distance);
+            addHalf(b, a, distance);
+        }
+
+        /**
+         * Adds a leg in one direction, or shortens it if it is already there.
+         *
+         * @param from     the id of the airport the leg starts from
+         * @param to       the id of the airport the leg leads to
+         * @param distance the length of the leg in knots
+         */
+        private void addHalf(int from, int to, double distance) {
+            for (int i = 0; i < sizes[from]; i++) {
+                if (targets[from][i] == to) {
+                    distances[from][i] = Math.min(distances[from][i], distance);
+                    return;
+                }
+            }
+            if (sizes[from] == targets[from].length) {
+                targets[from] = Arrays.copyOf(targets[from], sizes[from] * 2);
+                distances[from] = Arrays.copyOf(distances[from], sizes[from] * 2);
+            }
+            targets[from][sizes[from]] = to;
+            distances[from][sizes[from]] = distance;
+            sizes[from]++;
+        }
+
+        /**
+         * Removes an airport from the lists of all its neighbours.
+         *
+         * @param node the id of the airport
+         */
+        private void removeNode(int node) {
+            for (int i = 0; i < sizes[node]; i++) {
+                int neighbour = targets[node][i];
+                for (int j = 0; j < sizes[neighbour]; j++) {
+                    if (targets[neighbour][j] == node) {
+                        int last = --sizes[neighbour];
+                        targets[neighbour][j] = targets[neighbour][last];
+                        distances[neighbour][j] = distances[neighbour][last];
+                        break;
+                    }
+                }
+            }
+            sizes[node] = 0;
+        }
+    }
+
+    /**
+     * A Dijkstra search that checks whether neighbours of a contracted airport are
+     * connected without it. It stops as soon as every target has been reached within its
+     * limit, or after a fixed number of airports, in which case a shortcut may be added
+     * that is not strictly needed, which never makes a route wrong.
+     */
+    private static class WitnessSearch {
+        private final double[] distances;
+        private final double[] targetLimits; // -1 for airports that are not targets
+        private final double[] directLegs; // Direct legs of the last airport loaded, infinity if none
+        private final int[] touched;
+        private final IndexedMinHeap queue;
+        private int touchedCount;
+        private int[] directTargets = new int[0];
+        private int directCount;
+
+        /**
+         * Constructs a witness search for a given number of airports.
+         *
+         * @param nodeCount the number of airports
+         */
+        private WitnessSearch(int nodeCount) {
+            distances = new double[nodeCount];
+            targetLimits = new double[nodeCount];
+            directLegs = new double[nodeCount];
+            touched = new int[nodeCount];
+            queue = new IndexedMinHeap(nodeCount);
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(targetLimits, -1);
+            Arrays.fill(directLegs, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Returns the direct legs of an airport as an array indexed by airport, so that
+         * the legs between every pair of neighbours can be looked up in constant time.
+         * The array is only valid until the next call.
+         *
+         * @param source    the airport whose legs are loaded
+         * @param remaining the airports not contracted yet and their legs
+         * @return the distance of the direct leg to each airport, infinity if there is none
+         */
+        private double[] loadDirectLegs(int source, RemainingGraph remaining) {
+            for (int i = 0; i < directCount; i++) {
+                directLegs[directTargets[i]] = Double.POSITIVE_INFINITY;
+            }
+            directCount = remaining.sizes[source];
+            directTargets = Arrays.copyOf(remaining.targets[source], directCount);
+            for (int i = 0; i < directCount; i++) {
+                directLegs[directTargets[i]] = remaining.distances[source][i];
+            }
+            return directLegs;
+        }
+
+        /**
+         * Searches from an airport without passing the airport being contracted.
+         *
+         * @param source      the airport to search from
+         * @param excluded    the airport being contracted
+         * @param targets     the airports a witness path is needed to
+         * @param limits      the longest witness path that counts for each target
+         * @param targetCount the number of targets
+         * @param remaining   the airports not contracted yet and their legs
+         */
+        private void run(int source, int excluded, int[] targets, double[] limits, int targetCount,
+                RemainingGraph remaining) {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+            queue.clear();
+
+            double maxLimit = 0;
+            for (int i = 0; i < targetCount; i++) {
+                targetLimits[targets[i]] = limits[i];
+                maxLimit = Math.max(maxLimit, limits[i]);
+            }
+            int pending = targetCount;
+
+            distances[source] = 0.0;
+            touched[touchedCount++] = source;
+            queue.insertOrDecrease(source, 0.0);
+            int settled = 0;
+            while (pending > 0 && !queue.isEmpty() && queue.peekKey() <= maxLimit
+                    && settled < WITNESS_SETTLE_LIMIT) {
+                int node = queue.poll();
+                settled++;
+                int[] nodeTargets = remaining.targets[node];
+                double[] nodeDistances = remaining.distances[node];
+                for (int i = 0; i < remaining.sizes[node]; i++) {
+                    int next = nodeTargets[i];
+                    if (next == excluded) {
+                        continue;
+                    }
+                    double newDistance = distances[node] + nodeDistances[i];
+                    if (newDistance < distances[next]) {
+                        if (distances[next] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = next;
+                        }
+                        distances[next] = newDistance;
+                        queue.insertOrDecrease(next, newDistance);
+                        // Any path within the limit is a witness, it does not have to be the shortest
+                        if (targetLimits[next] >= 0 && newDistance <= targetLimits[next]) {
+                            targetLimits[next] = -1;
+                            pending--;
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < targetCount; i++) {
+                targetLimits[targets[i]] = -1;
+            }
+        }
+
+        /**
+         * Returns the distance the last search found to an airport.
+         *
+         * @param node the airport
+         * @return the shortest distance found, or infinity if the search did not reach it
+         */
+        private double distanceTo(int node) {
+            return distances[node];
+        }
+    }
+
+    /**
+     * The arrays a query works in, kept between queries like a SearchWorkspace. Every slot
+     * carries the generation of the query that last wrote it, and a slot with an older
+     * generation reads as empty, so starting a query only increments the generation.
+     * Side 0 searches from the origin and side 1 from the destination. The pool is bounded
+     * the same way as the one of SearchWorkspace.
+     */
+    private static class QueryWorkspace {
+        private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors(); // Workspaces kept at most
+        private static final long MAX_POOLED_BYTES = 64L << 20; // Array memory kept in the pool at most
+        private static final int BYTES_PER_NODE = 68; // Both sides' arrays and heaps
+        private static final ArrayDeque<QueryWorkspace> POOL = new ArrayDeque<>();
+        private static long pooledBytes; // Guarded by POOL
+
+        private int capacity;
+        private int generation;
+        private double[][] sideDistances;
+        private int[][] parents;
+        private int[][] labelGenerations;
+        private int[] originLegGenerations; // Airports last reached by a leg from the origin
+        private IndexedMinHeap[] queues;
+
+        /**
+         * Borrows a workspace for one query, reusing a released one when possible.
+         *
+         * @param nodeCount the number of airports of the hierarchy
+         * @return a workspace large enough for the query, with a fresh generation
+         */
+        private static QueryWorkspace acquire(int nodeCount) {
+            QueryWorkspace workspace;
+            synchronized (POOL) {
+                workspace = POOL.pollFirst();
+                if (workspace != null) {
+                    pooledBytes -= (long) workspace.capacity * BYTES_PER_NODE;
+                }
+            }
+            if (workspace == null || workspace.capacity > 2L * nodeCount) {
+                workspace = new QueryWorkspace(); // A much larger one is left to the garbage collector
+            }
+            workspace.begin(nodeCount);
+            return workspace;
+        }
+
+        /**
+         * Hands a workspace back for reuse. The workspace must not be used afterwards.
+         *
+         * @param workspace the workspace to release
+         */
+        private static void release(QueryWorkspace workspace) {
+            long bytes = (long) workspace.capacity * BYTES_PER_NODE;
+            synchronized (POOL) {
+                if (POOL.size() < MAX_POOLED && pooledBytes + bytes <= MAX_POOLED_BYTES) {
+                    POOL.offerFirst(workspace);
+                    pooledBytes += bytes;
+                }
+            }
+        }
+
+        /**
+         * Prepares the workspace for a new query, growing the arrays if the hierarchy is
+         * larger than any queried before.
+         *
+         * @param nodeCount the number of airports of the hierarchy
+         */
+        private void begin(int nodeCount) {
+            if (nodeCount > capacity) {
+                capacity = nodeCount;
+                sideDistances = new double[2][nodeCount];
+                parents = new int[2][nodeCount];
+                labelGenerations = new int[2][nodeCount];
+                originLegGenerations = new int[nodeCount];
+                queues = new IndexedMinHeap[] {new IndexedMinHeap(nodeCount), new IndexedMinHeap(nodeCount)};
+                generation = 0;
+            }
+            for (IndexedMinHeap queue : queues) {
+                queue.clear();
+                queue.resetCounts();
+            }
+            if (generation == Integer.MAX_VALUE) {
+                // Older generations could be mistaken for the current one after wrapping around
+                Arrays.fill(labelGenerations[0], 0);
+                Arrays.fill(labelGenerations[1], 0);
+                Arrays.fill(originLegGenerations, 0);
+                generation = 0;
+            }
+            generation++;
+        }
+
+        /**
+         * Returns the distance of an airport on one side.
+         *
+         * @param side the side, 0 from the origin and 1 from the destination
+         * @param id   the hierarchy id of the airport
+         * @return the distance in knots, or infinity if the side has not reached the airport
+         */
+        private double getDistance(int side, int id) {
+            return (labelGenerations[side][id] == generation) ? sideDistances[side][id] : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Returns the airport an airport was reached from on one side. Only valid if the side
+         * has reached the airport.
+         *
+         * @param side the side, 0 from the origin and 1 from the destination
+         * @param id   the hierarchy id of the airport
+         * @return the hierarchy id of the previous airport, or -1 at the side's start
+         */
+        private int getParent(int side, int id) {
+            return parents[side][id];
+        }
+
+        /**
+         * Sets the distance of an airport on one side. An airport reached from the origin
+         * in this way is no longer reached by a leg from the origin.
+         *
+         * @param side     the side, 0 from the origin and 1 from the destination
+         * @param id       the hierarchy id of the airport
+         * @param distance the distance in knots
+         * @param parent   the hierarchy id of the previous airport, or -1 at the side's start
+         */
+        private void setLabel(int side, int id, double distance, int parent) {
+            sideDistances[side][id] = distance;
+            parents[side][id] = parent;
+            labelGenerations[side][id] = generation;
+            if (side == 0) {
+                originLegGenerations[id] = 0;
+            }
+        }
+
+        /**
+         * Marks an airport as reached by a leg from the origin that is not in the hierarchy.
+         *
+         * @param id the hierarchy id of the airport
+         */
+        private void markOriginLeg(int id) {
+            originLegGenerations[id] = generation;
+        }
+
+        /**
+         * Returns whether an airport is reached by a leg from the origin that is not in the hierarchy.
+         *
+         * @param id the hierarchy id of the airport
+         * @return true if the route to the airport is the origin leg
+         */
+        private boolean isOriginLeg(int id) {
+            return originLegGenerations[id] == generation;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the airport and airplane CSV files in one pass over a character buffer. The file is
+ * decoded once, lines and fields are found by scanning for line breaks and commas, and a
+ * CsvRow hands the fields to a mapper without splitting the line into strings or using
+ * regular expressions. Numbers are read straight from the buffer.
+ * <p>
+ * Files compressed with gzip are recognised by their first bytes and read the same way.
+ * Large files are cut at line breaks into chunks that are parsed in parallel, and the rows
+ * of the chunks are put back together in the order of the file.
+ */
+public class CsvParser {
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    // A chunk must hold at least this many characters before a file is split
+    private static final int MIN_CHUNK_LENGTH = 1 << 20;
+
+    // Powers of ten that are exact doubles, for reading decimals without a string
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    // The most digits a decimal can have and still be read exactly as a long
+    private static final int MAX_FAST_DIGITS = 15;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CsvParser() {
+    }
+
+    /**
+     * Reads a CSV file and turns each of its lines into an object.
+     *
+     * @param file   the file to read, plain or compressed with gzip
+     * @param mapper turns a row into an object, or returns null to skip the row
+     * @param <T>    the type of the objects
+     * @return the objects in the order of their lines in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static <T> ArrayList<T> parse(File file, Function<CsvRow, T> mapper) throws IOException {
+        char[] chars;
+        int length;
+        try (InputStream in = open(file); Reader reader = new InputStreamReader(in, Charset.defaultCharset())) {
+            // The byte count of a plain file is a good first guess for its character count
+            chars = new char[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(1024, file.length() + 1))];
+            length = 0;
+            int read;
+            while ((read = reader.read(chars, length, chars.length - length)) != -1) {
+                length += read;
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+            }
+        }
+        return parse(chars, length, mapper);
+    }
+
+    /**
+     * Turns each line of a buffer into an object, in parallel chunks if the buffer is large.
+     *
+     * @param chars  the characters of the file
+     * @param length the number of characters of the buffer to use
+     * @param mapper turns a row into an object, or returns null to skip the row
+     * @param <T>    the type of the objects
+     * @return the objects in the order of their lines
+     */
+    static <T> ArrayList<T> parse(char[] chars, int length, Function<CsvRow, T> mapper) {
+        int chunkCount = Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_CHUNK_LENGTH);
+        if (chunkCount <= 1) {
+            return parseChunk(chars, 0, length, mapper);
+        }
+
+        // Every chunk after the first starts just after a line break
+        int[] bounds = new int[chunkCount + 1];
+        bounds[chunkCount] = length;
+        for (int i = 1; i < chunkCount; i++) {
+            int bound = Math.max(bounds[i - 1], (int) ((long) length * i / chunkCount));
+            while (bound < length && chars[bound - 1] != '\n') {
+                bound++;
+            }
+            bounds[i] = bound;
+        }
+
+        List<ArrayList<T>> chunks = IntStream.range(0, chunkCount).parallel()
+                .mapToObj(i -> parseChunk(chars, bounds[i], bounds[i + 1], mapper))
+                .collect(Collectors.toList());
+        ArrayList<T> results = new ArrayList<>();
+        for (ArrayList<T> chunk : chunks) {
+            results.addAll(chunk);
+        }
+        return results;
+    }
+
+    /**
+     * Turns each line of part of a buffer into an object. Lines may end in "\n", "\r\n"
+     * or "\r", as BufferedReader.readLine allows.
+     *
+     * @param chars  the characters of the file
+     * @param from   the position of the first character of the chunk, at the start of a line
+     * @param to     the position after the last character of the chunk
+     * @param mapper turns a row into an object, or returns null to skip the row
+     * @param <T>    the type of the objects
+     * @return the objects in the order of their lines
+     */
+    private static <T> ArrayList<T> parseChunk(char[] chars, int from, int to, Function<CsvRow, T> mapper) {
+        ArrayList<T> results = new ArrayList<>();
+        CsvRow row = new CsvRow();
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && chars[lineEnd] != '\n' && chars[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            row.load(chars, lineStart, lineEnd);
+            T result = mapper.apply(row);
+            if (result != null) {
+                results.add(result);
+            }
+            lineStart = lineEnd + 1;
+            if (lineEnd < to && chars[lineEnd] == '\r' && lineStart < to && chars[lineStart] == '\n') {
+                lineStart++;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Opens a file, decompressing it if it starts with the gzip header.
+     *
+     * @param file the file to open
+     * @return a stream of the file's uncompressed bytes
+     * @throws IOException if the file cannot be opened
+     */
+    private static InputStream open(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        if (magic == GZIP_MAGIC) {
+            return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+        }
+        return in;
+    }
+
+    /**
+     * Reads a whole number from part of a buffer, as Integer.parseInt does.
+     *
+     * @param chars the buffer
+     * @param start the position of the first character of the number
+     * @param end   the position after the last character of the number
+     * @return the number
+     * @throws NumberFormatException if the characters are not a whole number
+     */
+    static int parseInt(char[] chars, int start, int end) {
+        int i = start;
+        boolean negative = i < end && chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        // Nine digits always fit in an int, anything else is left to Integer.parseInt
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(new String(chars, start, end - start));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(new String(chars, start, end - start));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a decimal number from part of a buffer, as Double.parseDouble does. Plain
+     * decimals of up to fifteen digits, like every coordinate and frequency in the files,
+     * are read without a string: their digits form a long and a power of ten that are both
+     * exact doubles, so one division gives the correctly rounded value. Other forms are
+     * left to Double.parseDouble.
+     *
+     * @param chars the buffer
+     * @param start the position of the first character of the number
+     * @param end   the position after the last character of the number
+     * @return the number
+     * @throws NumberFormatException if the characters are not a number
+     */
+    static double parseDouble(char[] chars, int start, int end) {
+        int i = start;
+        boolean negative = i < end && chars[i] == '-';
+        if (negative || (i < end && chars[i] == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i != end || digits == 0 || digits > MAX_FAST_DIGITS) {
+            return Double.parseDouble(new String(chars, start, end - start));
+        }
+        double value = (fractionDigits > 0) ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+}
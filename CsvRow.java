@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+/**
+ * One line of a CSV file as seen by CsvParser: the positions of its comma-separated fields
+ * inside the parser's character buffer. No strings are created until a field is asked for,
+ * and numbers are read straight from the buffer. A row is reused for every line of a chunk,
+ * so it must not be kept after the mapper that received it returns.
+ * <p>
+ * Fields are not quoted, as Airport.toCSV and Airplane.toCSV write them. Spaces around a
+ * field are ignored.
+ */
+public class CsvRow {
+    private char[] chars;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fieldCount;
+
+    /**
+     * Points the row at a line of the buffer and finds its fields.
+     *
+     * @param buffer the characters of the file
+     * @param start  the position of the first character of the line
+     * @param end    the position after the last character of the line, without the line break
+     */
+    void load(char[] buffer, int start, int end) {
+        chars = buffer;
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer[i] == ',') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        // Trailing empty fields are dropped, as String.split does
+        while (fieldCount > 0 && starts[fieldCount - 1] == ends[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    /**
+     * Records a field, trimming the spaces around it.
+     *
+     * @param start the position of the first character of the field
+     * @param end   the position after the last character of the field
+     */
+    private void addField(int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * Removes fields from the start of the row, so that a row with a prefix can be read by
+     * a mapper written for the rows without it.
+     *
+     * @param count the number of fields to remove
+     */
+    void dropFields(int count) {
+        count = Math.min(count, fieldCount);
+        System.arraycopy(starts, count, starts, 0, fieldCount - count);
+        System.arraycopy(ends, count, ends, 0, fieldCount - count);
+        fieldCount -= count;
+    }
+
+    /**
+     * Returns the number of fields of the line, not counting empty fields at its end.
+     *
+     * @return the field count
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns a field as a string.
+     *
+     * @param field the index of the field
+     * @return the trimmed field, or an empty string if the line has no such field
+     */
+    public String getString(int field) {
+        return (field < fieldCount) ? new String(chars, starts[field], ends[field] - starts[field]) : "";
+    }
+
+    /**
+     * Returns a field as an int.
+     *
+     * @param field the index of the field
+     * @return the value of the field
+     * @throws NumberFormatException if the field is not a whole number
+     */
+    public int getInt(int field) {
+        return (field < fieldCount) ? CsvParser.parseInt(chars, starts[field], ends[field])
+                : CsvParser.parseInt(chars, 0, 0);
+    }
+
+    /**
+     * Returns a field as a double.
+     *
+     * @param field the index of the field
+     * @return the value of the field
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int field) {
+        return (field < fieldCount) ? CsvParser.parseDouble(chars, starts[field], ends[field])
+                : CsvParser.parseDouble(chars, 0, 0);
+    }
+
+    /**
+     * Returns the buffer the fields are in, for reading a field in parts.
+     *
+     * @return the character buffer
+     */
+    char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Returns where a field starts in the buffer.
+     *
+     * @param field the index of the field
+     * @return the position of the field's first character
+     */
+    int getStart(int field) {
+        return (field < fieldCount) ? starts[field] : 0;
+    }
+
+    /**
+     * Returns where a field ends in the buffer.
+     *
+     * @param field the index of the field
+     * @return the position after the field's last character
+     */
+    int getEnd(int field) {
+        return (field < fieldCount) ? ends[field] : 0;
+    }
+}
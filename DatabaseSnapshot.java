@@ -0,0 +1,523 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshots of the airports and airplanes files, so that the managers do not parse
+ * the CSV text every time they are constructed. A snapshot sits next to its CSV file, with
+ * ".bin" added to the name, and is laid out in columns: identifiers and names are stored
+ * as one block of characters with a length per string, coordinates and airplane figures are
+ * arrays of doubles, values that repeat (frequency names, fuel types, makes and models) are
+ * stored once in a string table and referred to by index, the fuel type lists are interned
+ * together with their bitmasks, and the frequencies of all airports form one table with an
+ * offset per airport.
+ * <p>
+ * A snapshot is read through a memory-mapped FileChannel, with each column copied out in
+ * one bulk read. It records the size and modification time of the CSV file it was made
+ * from and a CRC32 checksum of its contents. A snapshot whose CSV file has changed since,
+ * whose checksum does not match, or whose fuel bitmasks no longer match FuelType is not
+ * used; the CSV file is parsed instead and the snapshot written again.
+ */
+public class DatabaseSnapshot {
+    private static final int AIRPORTS_MAGIC = 0x41505431; // "APT1"
+    private static final int AIRPLANES_MAGIC = 0x41504c31; // "APL1"
+    private static final int FILE_VERSION = 1;
+
+    // Magic, version, CSV size, CSV modification time, payload length and checksum
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private DatabaseSnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file of a CSV file.
+     *
+     * @param csvFile the CSV file
+     * @return the file the snapshot of the CSV file is kept in
+     */
+    public static File snapshotFile(File csvFile) {
+        return new File(csvFile.getPath() + ".bin");
+    }
+
+    /**
+     * Loads the airports of a CSV file from its snapshot.
+     *
+     * @param csvFile the airports CSV file
+     * @return the airports in the order of the file, or null if there is no snapshot that
+     *         matches the current CSV file
+     */
+    public static ArrayList<Airport> loadAirports(File csvFile) {
+        ByteBuffer payload = map(csvFile, AIRPORTS_MAGIC);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            int count = payload.getInt();
+            String[] strings = readStrings(payload);
+            String[] identifiers = readStrings(payload);
+            String[] names = readStrings(payload);
+            double[] latitudes = readDoubles(payload, count);
+            double[] longitudes = readDoubles(payload, count);
+
+            int fuelListCount = payload.getInt();
+            int[] fuelListMasks = readInts(payload, fuelListCount);
+            int[] fuelListOffsets = readInts(payload, fuelListCount + 1);
+            int[] fuelListNames = readInts(payload, fuelListOffsets[fuelListCount]);
+            String[][] fuelLists = new String[fuelListCount][];
+            for (int list = 0; list < fuelListCount; list++) {
+                fuelLists[list] = new String[fuelListOffsets[list + 1] - fuelListOffsets[list]];
+                for (int i = 0; i < fuelLists[list].length; i++) {
+                    fuelLists[list][i] = strings[fuelListNames[fuelListOffsets[list] + i]];
+                }
+                if (FuelType.maskOf(fuelLists[list]) != fuelListMasks[list]) {
+                    return null; // Written with other fuel types
+                }
+            }
+            int[] airportFuelLists = readInts(payload, count);
+
+            int[] frequencyOffsets = readInts(payload, count + 1);
+            int[] frequencyNames = readInts(payload, frequencyOffsets[count]);
+            double[] frequencyValues = readDoubles(payload, frequencyOffsets[count]);
+
+            ArrayList<Airport> airports = new ArrayList<>(count);
+            for (int id = 0; id < count; id++) {
+                HashMap<String, Double> frequencies = new HashMap<>();
+                for (int i = frequencyOffsets[id]; i < frequencyOffsets[id + 1]; i++) {
+                    frequencies.put(strings[frequencyNames[i]], frequencyValues[i]);
+                }
+                airports.add(new Airport(identifiers[id], names[id], latitudes[id],
+                        longitudes[id], frequencies, fuelLists[airportFuelLists[id]].clone()));
+            }
+            return airports;
+        } catch (RuntimeException e) {
+            return null; // The checksum matched but the layout did not, so the snapshot is from elsewhere
+        }
+    }
+
+    /**
+     * Writes the snapshot of an airports CSV file. The CSV file must already hold the airports.
+     *
+     * @param csvFile  the airports CSV file
+     * @param airports the airports of the file, in the order of the file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void saveAirports(File csvFile, ArrayList<Airport> airports) throws IOException {
+        int count = airports.size();
+        StringTable strings = new StringTable();
+        String[] identifiers = new String[count];
+        String[] names = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        int[] airportFuelLists = new int[count];
+        HashMap<List<String>, Integer> fuelListIndexes = new HashMap<>();
+        ArrayList<String[]> fuelLists = new ArrayList<>();
+        ArrayList<Integer> fuelListNames = new ArrayList<>();
+        int[] frequencyOffsets = new int[count + 1];
+        for (int id = 0; id < count; id++) {
+            frequencyOffsets[id + 1] = frequencyOffsets[id] + airports.get(id).getFrequencies().size();
+        }
+        int[] frequencyNames = new int[frequencyOffsets[count]];
+        double[] frequencyValues = new double[frequencyOffsets[count]];
+
+        for (int id = 0; id < count; id++) {
+            Airport airport = airports.get(id);
+            identifiers[id] = airport.getIdentifier();
+            names[id] = airport.getName();
+            latitudes[id] = airport.getLatitude();
+            longitudes[id] = airport.getLongitude();
+
+            // Most airports share one of a few fuel type lists
+            String[] fuelTypes = airport.getFuelTypes();
+            Integer fuelList = fuelListIndexes.get(Arrays.asList(fuelTypes));
+            if (fuelList == null) {
+                fuelList = fuelLists.size();
+                fuelListIndexes.put(Arrays.asList(fuelTypes.clone()), fuelList);
+                fuelLists.add(fuelTypes);
+                for (String fuelType : fuelTypes) {
+                    fuelListNames.add(strings.indexOf(fuelType));
+                }
+            }
+            airportFuelLists[id] = fuelList;
+
+            int frequency = frequencyOffsets[id];
+            for (Map.Entry<String, Double> entry : airport.getFrequencies().entrySet()) {
+                frequencyNames[frequency] = strings.indexOf(entry.getKey());
+                frequencyValues[frequency] = entry.getValue();
+                frequency++;
+            }
+        }
+
+        int[] fuelListMasks = new int[fuelLists.size()];
+        int[] fuelListOffsets = new int[fuelLists.size() + 1];
+        for (int list = 0; list < fuelLists.size(); list++) {
+            fuelListMasks[list] = FuelType.maskOf(fuelLists.get(list));
+            fuelListOffsets[list + 1] = fuelListOffsets[list] + fuelLists.get(list).length;
+        }
+
+        PayloadWriter out = new PayloadWriter();
+        out.putInt(count);
+        out.putStrings(strings.strings());
+        out.putStrings(Arrays.asList(identifiers));
+        out.putStrings(Arrays.asList(names));
+        out.putDoubles(latitudes);
+        out.putDoubles(longitudes);
+
+        out.putInt(fuelLists.size());
+        out.putInts(fuelListMasks);
+        out.putInts(fuelListOffsets);
+        out.putInts(fuelListNames.stream().mapToInt(Integer::intValue).toArray());
+        out.putInts(airportFuelLists);
+
+        out.putInts(frequencyOffsets);
+        out.putInts(frequencyNames);
+        out.putDoubles(frequencyValues);
+        write(csvFile, AIRPORTS_MAGIC, out.toBuffer());
+    }
+
+    /**
+     * Loads the airplanes of a CSV file from its snapshot.
+     *
+     * @param csvFile the airplanes CSV file
+     * @return the airplanes in the order of the file, or null if there is no snapshot that
+     *         matches the current CSV file
+     */
+    public static ArrayList<Airplane> loadAirplanes(File csvFile) {
+        ByteBuffer payload = map(csvFile, AIRPLANES_MAGIC);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            int count = payload.getInt();
+            String[] strings = readStrings(payload);
+            int[] keys = readInts(payload, count);
+            int[] makesAndModels = readInts(payload, count);
+            int[] types = readInts(payload, count);
+            double[] tankSizes = readDoubles(payload, count);
+            double[] fuelBurnRates = readDoubles(payload, count);
+            double[] airspeeds = readDoubles(payload, count);
+
+            ArrayList<Airplane> airplanes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                airplanes.add(new Airplane(keys[i], strings[makesAndModels[i]], types[i], tankSizes[i],
+                        fuelBurnRates[i], airspeeds[i]));
+            }
+            return airplanes;
+        } catch (RuntimeException e) {
+            return null; // The checksum matched but the layout did not, so the snapshot is from elsewhere
+        }
+    }
+
+    /**
+     * Writes the snapshot of an airplanes CSV file. The CSV file must already hold the airplanes.
+     *
+     * @param csvFile   the airplanes CSV file
+     * @param airplanes the airplanes of the file, in the order of the file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void saveAirplanes(File csvFile, ArrayList<Airplane> airplanes) throws IOException {
+        int count = airplanes.size();
+        StringTable strings = new StringTable();
+        int[] keys = new int[count];
+        int[] makesAndModels = new int[count];
+        int[] types = new int[count];
+        double[] tankSizes = new double[count];
+        double[] fuelBurnRates = new double[count];
+        double[] airspeeds = new double[count];
+        for (int i = 0; i < count; i++) {
+            Airplane airplane = airplanes.get(i);
+            keys[i] = airplane.getKey();
+            makesAndModels[i] = strings.indexOf(airplane.getMakeAndModel());
+            types[i] = airplane.getType();
+            tankSizes[i] = airplane.getTankSize();
+            fuelBurnRates[i] = airplane.getFuelBurnRate();
+            airspeeds[i] = airplane.getAirspeed();
+        }
+
+        PayloadWriter out = new PayloadWriter();
+        out.putInt(count);
+        out.putStrings(strings.strings());
+        out.putInts(keys);
+        out.putInts(makesAndModels);
+        out.putInts(types);
+        out.putDoubles(tankSizes);
+        out.putDoubles(fuelBurnRates);
+        out.putDoubles(airspeeds);
+        write(csvFile, AIRPLANES_MAGIC, out.toBuffer());
+    }
+
+    /**
+     * Maps the snapshot of a CSV file and checks that it can be used.
+     *
+     * @param csvFile the CSV file
+     * @param magic   the magic number of the kind of snapshot expected
+     * @return the contents of the snapshot after its header, or null if the snapshot is
+     *         missing, of another kind or version, made from another state of the CSV file,
+     *         or damaged
+     */
+    private static ByteBuffer map(File csvFile, int magic) {
+        File file = snapshotFile(csvFile);
+        if (!file.isFile() || !csvFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != magic || buffer.getInt() != FILE_VERSION
+                    || buffer.getLong() != csvFile.length() || buffer.getLong() != modificationTime(csvFile)) {
+                return null;
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != buffer.remaining()) {
+                return null;
+            }
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            return ((int) crc.getValue() == checksum) ? payload : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot file with its header, through a temporary file moved into place.
+     *
+     * @param csvFile the CSV file the snapshot is made from
+     * @param magic   the magic number of the kind of snapshot
+     * @param payload the contents of the snapshot after its header
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(File csvFile, int magic, ByteBuffer payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic);
+        header.putInt(FILE_VERSION);
+        header.putLong(csvFile.length());
+        header.putLong(modificationTime(csvFile));
+        header.putInt(payload.remaining());
+        header.putInt((int) crc.getValue());
+        header.flip();
+        File tempFile = new File(snapshotFile(csvFile).getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = { header, payload };
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+        MutationJournal.moveIntoPlace(tempFile, snapshotFile(csvFile));
+    }
+
+    /**
+     * Returns the modification time of a file in nanoseconds, so that changes within the
+     * same millisecond are seen where the file system records them.
+     *
+     * @param file the file
+     * @return the modification time, or 0 if it cannot be read
+     */
+    static long modificationTime(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a column of ints and moves past it.
+     *
+     * @param buffer the buffer positioned at the column
+     * @param count  the number of values
+     * @return the values
+     */
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Reads a column of doubles and moves past it.
+     *
+     * @param buffer the buffer positioned at the column
+     * @param count  the number of values
+     * @return the values
+     */
+    private static double[] readDoubles(ByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Reads a block of strings: the number of strings, their lengths, then all their characters.
+     *
+     * @param buffer the buffer positioned at the block
+     * @return the strings
+     */
+    private static String[] readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        int[] lengths = readInts(buffer, count);
+        int total = 0;
+        for (int length : lengths) {
+            total += length;
+        }
+        char[] chars = new char[total];
+        CharBuffer charBuffer = buffer.asCharBuffer();
+        charBuffer.get(chars);
+        buffer.position(buffer.position() + total * Character.BYTES);
+
+        String[] strings = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            strings[i] = new String(chars, start, lengths[i]);
+            start += lengths[i];
+        }
+        return strings;
+    }
+
+    /**
+     * The strings of a snapshot, each stored once and referred to by its index.
+     */
+    private static class StringTable {
+        private final LinkedHashMap<String, Integer> indexes = new LinkedHashMap<>();
+
+        /**
+         * Returns the index of a string, adding it to the table if it is new.
+         *
+         * @param string the string
+         * @return its index in the table
+         */
+        private int indexOf(String string) {
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(string, index);
+            }
+            return index;
+        }
+
+        /**
+         * Returns the strings of the table in the order of their indexes.
+         *
+         * @return the strings
+         */
+        private Collection<String> strings() {
+            return indexes.keySet();
+        }
+    }
+
+    /**
+     * Builds the contents of a snapshot in a heap buffer that grows as columns are added.
+     * Whole columns are copied in with one bulk put each.
+     */
+    private static class PayloadWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+        /**
+         * Makes room for more bytes, doubling the buffer as often as needed.
+         *
+         * @param bytes the number of bytes about to be added
+         */
+        private void ensureRemaining(long bytes) {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            long capacity = buffer.capacity();
+            while (capacity - buffer.position() < bytes) {
+                capacity *= 2;
+            }
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Snapshot larger than 2 GB");
+            }
+            ByteBuffer larger = ByteBuffer.allocate((int) capacity);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        /**
+         * Adds an int.
+         *
+         * @param value the value
+         */
+        private void putInt(int value) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Adds a column of ints.
+         *
+         * @param values the values
+         */
+        private void putInts(int[] values) {
+            ensureRemaining((long) values.length * Integer.BYTES);
+            buffer.asIntBuffer().put(values);
+            buffer.position(buffer.position() + values.length * Integer.BYTES);
+        }
+
+        /**
+         * Adds a column of doubles.
+         *
+         * @param values the values
+         */
+        private void putDoubles(double[] values) {
+            ensureRemaining((long) values.length * Double.BYTES);
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + values.length * Double.BYTES);
+        }
+
+        /**
+         * Adds a block of strings: the number of strings, their lengths, then all their characters.
+         *
+         * @param strings the strings
+         */
+        private void putStrings(Collection<String> strings) {
+            int[] lengths = new int[strings.size()];
+            long total = 0;
+            int i = 0;
+            for (String string : strings) {
+                lengths[i++] = string.length();
+                total += string.length();
+            }
+            putInt(lengths.length);
+            putInts(lengths);
+            ensureRemaining(total * Character.BYTES);
+            CharBuffer chars = buffer.asCharBuffer();
+            for (String string : strings) {
+                chars.put(string);
+            }
+            buffer.position(buffer.position() + (int) total * Character.BYTES);
+        }
+
+        /**
+         * Returns the contents written so far, ready to be read.
+         *
+         * @return the contents
+         */
+        private ByteBuffer toBuffer() {
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * How detailed a diagnostic message is. A listener that accepts a level also accepts
+ * every level before it.
+ */
+public enum DiagnosticLevel {
+    /** Problems that stop a request from being answered. */
+    ERROR,
+    /** Progress of route searches, such as which route is being searched and whether it was found. */
+    INFO,
+    /** Details of the work done, such as the statistics of each search. */
+    DEBUG
+}
@@ -0,0 +1,35 @@
+/**
+ * Receives the diagnostic messages of the route planner. Callers check isEnabled before
+ * building a message, so a level that is turned off costs one method call and no string
+ * building.
+ */
+public interface DiagnosticListener {
+
+    /** A listener that accepts no messages at all. */
+    DiagnosticListener NONE = new DiagnosticListener() {
+        @Override
+        public boolean isEnabled(DiagnosticLevel level) {
+            return false;
+        }
+
+        @Override
+        public void report(DiagnosticLevel level, String message) {
+        }
+    };
+
+    /**
+     * Returns whether messages of a level are wanted.
+     *
+     * @param level The level of the message.
+     * @return true if messages of the level should be reported.
+     */
+    boolean isEnabled(DiagnosticLevel level);
+
+    /**
+     * Reports a message. Only called for levels that are enabled.
+     *
+     * @param level The level of the message.
+     * @param message The message.
+     */
+    void report(DiagnosticLevel level, String message);
+}
@@ -0,0 +1,97 @@
+/**
+ * Calculates the distances and headings from one airport to a whole row of airports at
+ * once, such as the connections of a newly added airport. For distances the coordinates
+ * of the row are first copied into primitive columns, and the arithmetic then runs as one
+ * simple loop over those columns, which the JIT compiler can unroll and vectorize. Headings
+ * use the sines and cosines cached by each Airport, so only an arctangent is left per
+ * connection. The results are the same as calling the Edge methods for every airport of
+ * the row.
+ */
+public class DistanceKernel {
+
+    private DistanceKernel() {
+    }
+
+    /**
+     * Calculates the distance from an airport to every airport of a row, as
+     * Edge.distanceBetween does.
+     *
+     * @param origin    the airport the distances are measured from
+     * @param row       the airports the distances are measured to
+     * @param count     the number of airports of the row to use
+     * @param distances the array to write the distances in knots to, at least count long
+     */
+    static void distances(Airport origin, Airport[] row, int count, double[] distances) {
+        double[] deltaLats = new double[count];
+        double[] deltaLons = new double[count];
+        double originLat = origin.getLatitude();
+        double originLon = -origin.getLongitude();
+        for (int i = 0; i < count; i++) {
+            deltaLats[i] = row[i].getLatitude() - originLat;
+            deltaLons[i] = -row[i].getLongitude() - originLon;
+        }
+        for (int i = 0; i < count; i++) {
+            distances[i] = Math.sqrt(deltaLats[i] * deltaLats[i] + deltaLons[i] * deltaLons[i]) * Edge.KNOT_CONVERSION;
+        }
+    }
+
+    /**
+     * Calculates the great-circle distance from an airport to every airport of a row, as
+     * Edge.greatCircleDistanceBetween does.
+     *
+     * @param origin    the airport the distances are measured from
+     * @param row       the airports the distances are measured to
+     * @param count     the number of airports of the row to use
+     * @param distances the array to write the distances in knots to, at least count long
+     */
+    static void greatCircleDistances(Airport origin, Airport[] row, int count, double[] distances) {
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] zs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = row[i].getCosLatitude() * row[i].getCosLongitude();
+            ys[i] = row[i].getCosLatitude() * row[i].getSinLongitude();
+            zs[i] = row[i].getSinLatitude();
+        }
+        double originX = origin.getCosLatitude() * origin.getCosLongitude();
+        double originY = origin.getCosLatitude() * origin.getSinLongitude();
+        double originZ = origin.getSinLatitude();
+        for (int i = 0; i < count; i++) {
+            double dx = originX - xs[i];
+            double dy = originY - ys[i];
+            double dz = originZ - zs[i];
+            double halfChord = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+            distances[i] = 2 * Math.asin(Math.min(1.0, halfChord)) * Edge.EARTH_RADIUS;
+        }
+    }
+
+    /**
+     * Calculates the heading from an airport to every airport of a row, as
+     * Edge.headingBetween does.
+     *
+     * @param origin   the airport the headings start from
+     * @param row      the airports the headings lead to
+     * @param count    the number of airports of the row to use
+     * @param headings the array to write the headings in degrees to, at least count long
+     */
+    static void headingsFrom(Airport origin, Airport[] row, int count, double[] headings) {
+        for (int i = 0; i < count; i++) {
+            headings[i] = Edge.headingBetween(origin, row[i]);
+        }
+    }
+
+    /**
+     * Calculates the heading from every airport of a row to an airport, as
+     * Edge.headingBetween does.
+     *
+     * @param destination the airport the headings lead to
+     * @param row         the airports the headings start from
+     * @param count       the number of airports of the row to use
+     * @param headings    the array to write the headings in degrees to, at least count long
+     */
+    static void headingsTo(Airport destination, Airport[] row, int count, double[] headings) {
+        for (int i = 0; i < count; i++) {
+            headings[i] = Edge.headingBetween(row[i], destination);
+        }
+    }
+}
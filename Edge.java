@@ -5,18 +5,19 @@ import java.lang.Math;
  * heading.
  * This class calculates the distance and heading between two airports based on
  * their
- * geographic coordinates.
+ * geographic coordinates. The heading is only calculated the first time it is
+ * requested, since most edges are never displayed.
  */
 public class Edge {
     private Airport originNode;
     private Airport destinationNode;
     private double distance; // Distance in knots
-    private double heading; // Heading in degrees
-    private final double KNOT_CONVERSION = 60; // Conversion factor from degrees to nautical miles
+    private double heading; // Heading in degrees, NaN until first requested
+    static final double KNOT_CONVERSION = 60; // Conversion factor from degrees to nautical miles
+    static final double EARTH_RADIUS = Math.toDegrees(KNOT_CONVERSION); // Radius of the earth in nautical miles
 
     /**
-     * Constructs an Edge object between two airports and calculates the distance
-     * and heading.
+     * Constructs an Edge object between two airports and calculates the distance.
      *
      * @param origin      The origin airport.
      * @param destination The destination airport.
@@ -25,24 +26,47 @@ public class Edge {
         this.originNode = origin;
         this.destinationNode = destination;
         this.distance = calculateDistance();
-        this.heading = calculateHeading();
+        this.heading = Double.NaN;
     }
 
     /**
-     * Calculates the great-circle distance between the two airports in nautical
-     * miles (knots).
+     * Constructs an Edge object between two airports using an already known
+     * distance, such as one calculated during a route search.
+     *
+     * @param origin      The origin airport.
+     * @param destination The destination airport.
+     * @param distance    The distance between the airports in knots.
+     */
+    Edge(Airport origin, Airport destination, double distance) {
+        this.originNode = origin;
+        this.destinationNode = destination;
+        this.distance = distance;
+        this.heading = Double.NaN;
+    }
+
+    /**
+     * Constructs an Edge object between two airports using an already known
+     * distance and heading, such as the values stored in a CompactGraph.
+     *
+     * @param origin      The origin airport.
+     * @param destination The destination airport.
+     * @param distance    The distance between the airports in knots.
+     * @param heading     The heading from the origin to the destination in degrees.
+     */
+    Edge(Airport origin, Airport destination, double distance, double heading) {
+        this.originNode = origin;
+        this.destinationNode = destination;
+        this.distance = distance;
+        this.heading = heading;
+    }
+
+    /**
+     * Calculates the distance between the two airports in nautical miles (knots).
      * 
      * @return The distance between the origin and destination airports in knots.
      */
     private double calculateDistance() {
-        double lat1 = originNode.getLatitude();
-        double lon1 = -originNode.getLongitude();
-        double lat2 = destinationNode.getLatitude();
-        double lon2 = -destinationNode.getLongitude();
-        double deltaLat = lat2 - lat1;
-        double deltaLon = lon2 - lon1;
-        double degreeDistance = Math.sqrt(Math.pow(deltaLat, 2) + Math.pow(deltaLon, 2));
-        return degreeDistance * KNOT_CONVERSION; // Converts the degree distance to nautical miles
+        return distanceBetween(originNode, destinationNode);
     }
 
     /**
@@ -52,14 +76,68 @@ public class Edge {
      *         airport.
      */
     private double calculateHeading() {
-        double lat1 = Math.toRadians(originNode.getLatitude());
-        double lon1 = Math.toRadians(-originNode.getLongitude());
-        double lat2 = Math.toRadians(destinationNode.getLatitude());
-        double lon2 = Math.toRadians(-destinationNode.getLongitude());
+        return headingBetween(originNode, destinationNode);
+    }
 
-        double dLon = lon2 - lon1;
-        double y = Math.sin(dLon) * Math.cos(lat2);
-        double x = Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(dLon);
+    /**
+     * Calculates the distance between two airports in nautical miles (knots)
+     * without creating an Edge.
+     *
+     * @param origin      The origin airport.
+     * @param destination The destination airport.
+     * @return The distance between the origin and destination airports in knots.
+     */
+    static double distanceBetween(Airport origin, Airport destination) {
+        double lat1 = origin.getLatitude();
+        double lon1 = -origin.getLongitude();
+        double lat2 = destination.getLatitude();
+        double lon2 = -destination.getLongitude();
+        double deltaLat = lat2 - lat1;
+        double deltaLon = lon2 - lon1;
+        double degreeDistance = Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
+        return degreeDistance * KNOT_CONVERSION; // Converts the degree distance to nautical miles
+    }
+
+    /**
+     * Calculates the true great-circle distance between two airports in nautical miles
+     * (knots), treating the earth as a sphere. Unlike distanceBetween, which measures a
+     * straight line on a flat latitude/longitude map, this is the shortest distance over
+     * the earth's surface. The distance is worked out from the straight chord between the
+     * two points, which stays accurate for airports that are very close together.
+     *
+     * @param origin      The origin airport.
+     * @param destination The destination airport.
+     * @return The great-circle distance between the airports in knots.
+     */
+    static double greatCircleDistanceBetween(Airport origin, Airport destination) {
+        double dx = origin.getCosLatitude() * origin.getCosLongitude()
+                - destination.getCosLatitude() * destination.getCosLongitude();
+        double dy = origin.getCosLatitude() * origin.getSinLongitude()
+                - destination.getCosLatitude() * destination.getSinLongitude();
+        double dz = origin.getSinLatitude() - destination.getSinLatitude();
+        double halfChord = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+        return 2 * Math.asin(Math.min(1.0, halfChord)) * EARTH_RADIUS;
+    }
+
+    /**
+     * Calculates the heading between two airports in degrees without creating an Edge.
+     * The sines and cosines of both positions are cached by the airports, so only the
+     * final arctangent is calculated here.
+     *
+     * @param origin      The origin airport.
+     * @param destination The destination airport.
+     * @return The heading in degrees from the origin airport to the destination
+     *         airport.
+     */
+    static double headingBetween(Airport origin, Airport destination) {
+        // Longitudes are negated, so the sine of the longitude difference changes sign
+        double sinDLon = -(destination.getSinLongitude() * origin.getCosLongitude()
+                - destination.getCosLongitude() * origin.getSinLongitude());
+        double cosDLon = destination.getCosLongitude() * origin.getCosLongitude()
+                + destination.getSinLongitude() * origin.getSinLongitude();
+        double y = sinDLon * destination.getCosLatitude();
+        double x = origin.getCosLatitude() * destination.getSinLatitude()
+                - origin.getSinLatitude() * destination.getCosLatitude() * cosDLon;
 
         return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360; // Normalizes the heading to a range of 0-360 degrees
     }
@@ -81,7 +159,7 @@ public class Edge {
     public void setOriginNode(Airport originNode) {
         this.originNode = originNode;
         this.distance = calculateDistance();
-        this.heading = calculateHeading();
+        this.heading = Double.NaN;
     }
 
     /**
@@ -102,7 +180,7 @@ public class Edge {
     public void setDestinationNode(Airport destinationNode) {
         this.destinationNode = destinationNode;
         this.distance = calculateDistance();
-        this.heading = calculateHeading();
+        this.heading = Double.NaN;
     }
 
     /**
@@ -115,11 +193,15 @@ public class Edge {
     }
 
     /**
-     * Gets the heading between the origin and destination airports.
+     * Gets the heading between the origin and destination airports, calculating
+     * it on the first call.
      * 
      * @return The heading in degrees.
      */
     public double getHeading() {
+        if (Double.isNaN(heading)) {
+            heading = calculateHeading();
+        }
         return heading;
     }
 }
@@ -1,156 +1,591 @@
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.PriorityQueue;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * The Flight class is responsible for planning and managing flight routes for an airplane.
  * It calculates routes between airports while considering factors such as fuel, airspeed, and the availability of refueling.
  */
 public class Flight {
-    Graph airportsGraph;
     private final String LINE_SEPARATOR = "--------------------------------";
+    private static final int ROUTE_CACHE_CAPACITY = 1000;
+    private RoutingMode routingMode = RoutingMode.DIJKSTRA;
+    private boolean parallelBidirectional;
+    private boolean parallelItinerary;
+    private int fuelLevels = FuelLabelSearch.DEFAULT_FUEL_LEVELS;
+    private SearchStatistics lastSearchStatistics;
+    private HierarchyManager hierarchyManager;
+    private final RouteCache routeCache = new RouteCache(ROUTE_CACHE_CAPACITY);
+    private DiagnosticListener diagnostics = new ConsoleDiagnostics(DiagnosticLevel.DEBUG);
+
+    /**
+     * Sets the search algorithm used to find routes.
+     *
+     * @param newRoutingMode The routing mode to use.
+     */
+    public void setRoutingMode(RoutingMode newRoutingMode) {
+        if (newRoutingMode != routingMode) {
+            routingMode = newRoutingMode;
+            routeCache.clear(); // Cached routes may be longer than the new mode would find
+        }
+    }
+
+    /**
+     * Returns the search algorithm used to find routes.
+     *
+     * @return The current routing mode.
+     */
+    public RoutingMode getRoutingMode() {
+        return routingMode;
+    }
+
+    /**
+     * Sets whether the two frontiers of a bidirectional search run on separate threads.
+     *
+     * @param parallel true to search forward and backward at the same time.
+     */
+    public void setParallelBidirectional(boolean parallel) {
+        if (parallel != parallelBidirectional) {
+            parallelBidirectional = parallel;
+            routeCache.clear(); // Cached routes were found with the other kind of search
+        }
+    }
+
+    /**
+     * Sets whether the legs of a flight plan with several stops are searched at the same time.
+     *
+     * @param parallel true to search every leg of an itinerary concurrently.
+     */
+    public void setParallelItinerary(boolean parallel) {
+        parallelItinerary = parallel;
+    }
+
+    /**
+     * Sets how many fuel levels the tank is divided into when searching over airport and
+     * fuel states. More levels keep more alternative routes at the cost of more memory.
+     *
+     * @param newFuelLevels The number of fuel levels, at least 1.
+     */
+    public void setFuelLevels(int newFuelLevels) {
+        fuelLevels = Math.max(1, newFuelLevels);
+        routeCache.clear(); // Cached routes were found with the old number of levels
+    }
+
+    /**
+     * Returns the cache of computed routes, so that it can be registered with the airport
+     * and airplane managers and its hit and miss counts can be read.
+     *
+     * @return The route cache.
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Sets where Contraction Hierarchies are looked up in CONTRACTION_HIERARCHY mode.
+     *
+     * @param newHierarchyManager The manager of the fleet's hierarchies, or null to always use Dijkstra.
+     */
+    public void setHierarchyManager(HierarchyManager newHierarchyManager) {
+        hierarchyManager = newHierarchyManager;
+    }
+
+    /**
+     * Sets where the progress and statistics of route searches are reported. By default
+     * everything is printed to the console, as the menu has always shown it.
+     *
+     * @param newDiagnostics The listener to report to, or DiagnosticListener.NONE for silence.
+     */
+    public void setDiagnostics(DiagnosticListener newDiagnostics) {
+        diagnostics = newDiagnostics;
+    }
+
+    /**
+     * Returns the statistics of the most recent route search, so that the work done
+     * by different routing modes can be compared.
+     *
+     * @return The statistics of the last search, or null if no search has run.
+     */
+    public SearchStatistics getLastSearchStatistics() {
+        return lastSearchStatistics;
+    }
     
     /**
-     * Plans a flight route between a list of destination airports.
+     * Plans a flight route between a list of destination airports and prints the flight plan,
+     * or why it is not possible.
      *
      * @param destinationAirports A list of airports representing the flight's destination airports (Usually only 2).
      * @param selectedPlane The airplane selected for the flight.
-     * @param airportList The list of all available airports for routing.
+     * @param graph The graph of all available airports for routing, kept alive between calls.
+     */
+    public void planFlight(ArrayList<Airport> destinationAirports, Airplane selectedPlane, Graph graph) {
+        FlightPlan plan = computeFlightPlan(destinationAirports, selectedPlane, graph);
+        if (plan.isPossible()) {
+            // Output the flight plan
+            System.out.println(displayFlightPlan(plan.getLegs(), selectedPlane));
+        } else {
+            System.out.println(describeFailure(plan.getFailedLeg()));
+        }
+    }
+
+    /**
+     * Plans a flight route between a list of destination airports without printing it.
+     * Each leg is searched in turn and planning stops at the first leg that can not be flown.
+     * In parallel itinerary mode every leg is searched at the same time (see solveLegsInParallel).
+     * The progress of each leg is reported to the diagnostics listener, in itinerary order.
+     *
+     * @param destinationAirports The airports of the itinerary, in order.
+     * @param selectedPlane The airplane selected for the flight.
+     * @param graph The graph of all available airports for routing.
+     * @return The result of every leg that was planned.
      */
-    public void planFlight(ArrayList<Airport> destinationAirports, Airplane selectedPlane,
-            ArrayList<Airport> airportList) {
-        airportsGraph = new Graph(airportList);
+    public FlightPlan computeFlightPlan(ArrayList<Airport> destinationAirports, Airplane selectedPlane,
+            Graph graph) {
+        RoutingGraph routingGraph = graph.getRoutingGraph();
+        ArrayList<RouteRequest> legs = new ArrayList<>();
+        for (int i = 0; i < destinationAirports.size() - 1; i++) {
+            legs.add(new RouteRequest(destinationAirports.get(i), destinationAirports.get(i + 1), selectedPlane));
+        }
 
-        ArrayList<Edge> allFlightLegs = new ArrayList<>();
+        if (parallelItinerary && legs.size() > 1) {
+            return solveLegsInParallel(routingGraph, legs);
+        }
 
         // Process each leg of the flight route
-        for (int i = 0; i < destinationAirports.size() - 1; i++) {
-            ArrayList<Edge> currentLegs = findRoute(destinationAirports.get(i), destinationAirports.get(i + 1),
-                    selectedPlane);
+        ArrayList<RouteResult> legResults = new ArrayList<>();
+        for (RouteRequest leg : legs) {
+            RouteResult result = answerRequest(routingGraph, leg);
+            legResults.add(result);
+            if (!result.isRejected()) {
+                reportLeg(result);
+            }
+            // Stop early if no route is found or destination airports are the same
+            if (!result.isPossible()) {
+                return new FlightPlan(legResults, false);
+            }
+        }
+        return new FlightPlan(legResults, true);
+    }
 
-            // Return early if no route is found or destination airports are the same
-            if (currentLegs == null) {
-                return;
+    /**
+     * Finds the routes of every leg of an itinerary at the same time. Each leg starts with a full
+     * tank, so the legs do not depend on each other and are searched on the common fork-join pool
+     * over one shared routing graph. As soon as a leg turns out to be impossible, the legs after it
+     * that have not started yet are cancelled. Legs before it are still awaited, so the reported
+     * failure is always the first impossible leg, as in the one-by-one search. Each leg is
+     * reported in itinerary order once the searches are done.
+     *
+     * @param graph The routing graph shared by the legs.
+     * @param legs The legs of the itinerary, in order.
+     * @return The result of every leg up to the first one that can not be flown.
+     */
+    private FlightPlan solveLegsInParallel(RoutingGraph graph, ArrayList<RouteRequest> legs) {
+        // Check every leg before dispatching any search
+        for (RouteRequest leg : legs) {
+            String rejection = rejectionReason(leg);
+            if (rejection != null) {
+                ArrayList<RouteResult> rejected = new ArrayList<>();
+                rejected.add(new RouteResult(leg, new ArrayList<>(), rejection, false,
+                        new SearchStatistics(routingMode), 0));
+                return new FlightPlan(rejected, false);
             }
+        }
 
-            if (currentLegs.isEmpty()) {
-                System.out.println("Flight plan not possible between " +
-                        destinationAirports.get(i).getName() + " and " +
-                        destinationAirports.get(i + 1).getName());
+        ArrayList<CompletableFuture<RouteResult>> searches = new ArrayList<>();
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+        for (RouteRequest leg : legs) {
+            CompletableFuture<RouteResult> search = CompletableFuture.supplyAsync(() -> answerRequest(graph, leg));
+            search.thenAccept(result -> {
+                if (!result.isPossible()) {
+                    failure.complete(null);
+                }
+            });
+            searches.add(search);
+        }
+
+        CompletableFuture.anyOf(CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])), failure).join();
+        if (failure.isDone()) {
+            // Cancel every leg after the first failure found so far
+            boolean failed = false;
+            for (CompletableFuture<RouteResult> search : searches) {
+                if (failed) {
+                    search.cancel(false);
+                } else if (search.isDone() && !search.join().isPossible()) {
+                    failed = true;
+                }
+            }
+        }
+
+        ArrayList<RouteResult> legResults = new ArrayList<>();
+        for (CompletableFuture<RouteResult> search : searches) {
+            RouteResult result;
+            try {
+                result = search.join();
+            } catch (CancellationException e) {
+                break; // Only legs after an impossible leg are cancelled
+            }
+            legResults.add(result);
+            reportLeg(result);
+            if (!result.isPossible()) {
+                return new FlightPlan(legResults, false);
+            }
+        }
+        return new FlightPlan(legResults, true);
+    }
+
+    /**
+     * Computes the routes from every origin to every destination for one airplane without
+     * printing anything. Each origin is a single search to all destinations, and the
+     * origins are searched in parallel on the common fork-join pool over one shared graph.
+     *
+     * @param origins The airports the routes start from.
+     * @param destinations The airports the routes lead to.
+     * @param selectedPlane The airplane used for every route.
+     * @param graph The graph of all available airports for routing.
+     * @return The distance, time and stop count of every route. All routes are unreachable
+     *         if the airplane's airspeed or tank size is not greater than 0.
+     */
+    public RouteMatrix computeRouteMatrix(ArrayList<Airport> origins, ArrayList<Airport> destinations,
+            Airplane selectedPlane, Graph graph) {
+        int originCount = origins.size();
+        int destinationCount = destinations.size();
+        double[][] distances = new double[originCount][destinationCount];
+        double[][] times = new double[originCount][destinationCount];
+        int[][] stops = new int[originCount][destinationCount];
+        for (int i = 0; i < originCount; i++) {
+            Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+            Arrays.fill(times[i], Double.POSITIVE_INFINITY);
+            Arrays.fill(stops[i], -1);
+        }
+        if (selectedPlane.getAirspeed() <= 0 || selectedPlane.getTankSize() <= 0) {
+            return new RouteMatrix(distances, times, stops);
+        }
+
+        RoutingGraph routingGraph = graph.getRoutingGraph();
+        int[] destinationIds = new int[destinationCount];
+        int knownCount = 0;
+        for (int j = 0; j < destinationCount; j++) {
+            destinationIds[j] = routingGraph.getId(destinations.get(j));
+            if (destinationIds[j] >= 0) {
+                knownCount++;
+            }
+        }
+        // Only search for the destinations that are in the graph
+        int[] knownIds = new int[knownCount];
+        int[] knownColumns = new int[knownCount];
+        for (int j = 0, k = 0; j < destinationCount; j++) {
+            if (destinationIds[j] >= 0) {
+                knownIds[k] = destinationIds[j];
+                knownColumns[k++] = j;
+            }
+        }
+
+        IntStream.range(0, originCount).parallel().forEach(i -> {
+            int fromId = routingGraph.getId(origins.get(i));
+            if (fromId < 0 || knownIds.length == 0) {
                 return;
             }
+            double[] routeDistances = new double[knownIds.length];
+            int[] legCounts = new int[knownIds.length];
+            new FuelLabelSearch(routingGraph, selectedPlane, fuelLevels).searchMany(fromId, knownIds,
+                    routeDistances, legCounts, new SearchStatistics(routingMode));
+            for (int k = 0; k < knownIds.length; k++) {
+                if (legCounts[k] >= 0) {
+                    int j = knownColumns[k];
+                    distances[i][j] = routeDistances[k];
+                    times[i][j] = routeDistances[k] / selectedPlane.getAirspeed();
+                    stops[i][j] = Math.max(0, legCounts[k] - 1);
+                }
+            }
+        });
+        return new RouteMatrix(distances, times, stops);
+    }
 
-            allFlightLegs.addAll(currentLegs);
+    /**
+     * Answers a batch of route requests without printing anything. Each request runs as its
+     * own task on a virtual thread (on a fixed pool of concurrencyLimit threads before Java 21),
+     * and at most concurrencyLimit requests are searched at the same time. Requests are taken
+     * from the stream only when a slot is free, so a long stream is never queued all at once.
+     * Every request is searched against the same snapshot of the graph, taken when the batch
+     * starts; the routing settings of this Flight should not be changed while a batch runs.
+     *
+     * @param requests The route requests to answer.
+     * @param graph The graph of all available airports for routing.
+     * @param concurrencyLimit The largest number of requests searched at the same time, at least 1.
+     * @return The result of every request, in the order of the stream.
+     */
+    public ArrayList<RouteResult> planBatch(Stream<RouteRequest> requests, Graph graph, int concurrencyLimit) {
+        int limit = Math.max(1, concurrencyLimit);
+        RoutingGraph routingGraph = graph.getRoutingGraph();
+        Semaphore slots = new Semaphore(limit);
+        ExecutorService executor = newBatchExecutor(limit);
+        ArrayList<CompletableFuture<RouteResult>> pending = new ArrayList<>();
+        try {
+            requests.forEachOrdered(request -> {
+                slots.acquireUninterruptibly();
+                try {
+                    pending.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return answerRequest(routingGraph, request);
+                        } finally {
+                            slots.release();
+                        }
+                    }, executor));
+                } catch (RuntimeException e) {
+                    slots.release(); // The task was rejected and will never release its slot
+                    throw e;
+                }
+            });
+
+            ArrayList<RouteResult> results = new ArrayList<>(pending.size());
+            for (CompletableFuture<RouteResult> result : pending) {
+                results.add(result.join());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
         }
+    }
 
-        // Output the flight plan
-        System.out.println(displayFlightPlan(allFlightLegs, selectedPlane));
+    /**
+     * Creates the executor of a batch: one virtual thread per task when the runtime has
+     * virtual threads (Java 21 and later), otherwise a fixed pool of platform threads.
+     *
+     * @param poolSize The number of threads of the fallback pool.
+     * @return The executor to run the batch's requests on.
+     */
+    private static ExecutorService newBatchExecutor(int poolSize) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(poolSize);
+        }
     }
 
     /**
      * Finds the optimal route between two airports derived from dijkstra's shortest path algorithm.
-     * It was modified to fit the requirement of refueling takingthe airplanes fuel and airspeed into consideration. 
-     * 
+     * It was modified to fit the requirement of refueling takingthe airplanes fuel and airspeed into consideration.
+     * The search runs over airport and fuel level states (see FuelLabelSearch), so a longer path that
+     * arrives with more fuel is not thrown away. The search algorithm used depends on the routing mode.
+     * Found routes are kept in the route cache, so planning the same route again does not search.
+     * Nothing is printed or reported, and the method is safe to call from several threads at once.
+     *
+     * @param graph The routing graph to search.
+     * @param request The airports and airplane of the route.
+     * @return The result of the request, timed from start to finish.
+     */
+    private RouteResult answerRequest(RoutingGraph graph, RouteRequest request) {
+        long start = System.nanoTime();
+        Airport fromAirport = request.getOrigin();
+        Airport toAirport = request.getDestination();
+        Airplane selectedAirplane = request.getAirplane();
+        SearchStatistics statistics = new SearchStatistics(routingMode);
+
+        String failureReason = rejectionReason(request);
+        if (failureReason != null) {
+            return new RouteResult(request, new ArrayList<>(), failureReason, false, statistics,
+                    System.nanoTime() - start);
+        }
+
+        ArrayList<Edge> route = routeCache.get(fromAirport, toAirport, selectedAirplane);
+        boolean cached = (route != null);
+        if (!cached) {
+            int fromId = graph.getId(fromAirport);
+            int toId = graph.getId(toAirport);
+            if (fromId < 0 || toId < 0) {
+                route = new ArrayList<>();
+                failureReason = RouteResult.NOT_IN_GRAPH;
+            } else {
+                route = searchRoute(graph, fromId, toId, selectedAirplane, statistics);
+                routeCache.put(fromAirport, toAirport, selectedAirplane, route);
+            }
+        }
+        if (failureReason == null && route.isEmpty()) {
+            failureReason = RouteResult.NO_ROUTE;
+        }
+        return new RouteResult(request, route, failureReason, cached, statistics, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns why a route request can be turned down without searching.
+     *
+     * @param request The request to check.
+     * @return The failure reason, or null if the route should be searched.
+     */
+    private static String rejectionReason(RouteRequest request) {
+        // If origin and destination are the same, no route is required
+        if (request.getOrigin().equals(request.getDestination())) {
+            return RouteResult.SAME_AIRPORTS;
+        } else if (request.getAirplane().getAirspeed() <= 0) {
+            return RouteResult.NO_AIRSPEED;
+        } else if (request.getAirplane().getTankSize() <= 0) {
+            return RouteResult.NO_TANK;
+        }
+        return null;
+    }
+
+    /**
+     * Finds out which airplanes of a fleet can fly between two airports and how long each
+     * takes, without printing anything. Airplanes with the same performance profile always
+     * get the same route, so the fleet is grouped by profile, one search per distinct profile
+     * runs in parallel on the common fork-join pool, and each group's result is given to every
+     * airplane in the group.
+     *
      * @param fromAirport The starting airport.
      * @param toAirport The destination airport.
-     * @param selectedAirplane The airplane used for the flight.
-     * @return A list of edges representing the optimal route between the two airports.
+     * @param airplanes The airplanes of the fleet.
+     * @param graph The graph of all available airports for routing.
+     * @return The result for every airplane, in the order of the fleet.
      */
-    private ArrayList<Edge> findRoute(Airport fromAirport, Airport toAirport, Airplane selectedAirplane) {
+    public ArrayList<RouteResult> evaluateFleet(Airport fromAirport, Airport toAirport,
+            ArrayList<Airplane> airplanes, Graph graph) {
+        // Number the distinct profiles and keep the first airplane of each as its representative
+        LinkedHashMap<PerformanceProfile, Integer> profileIds = new LinkedHashMap<>();
+        ArrayList<Airplane> representatives = new ArrayList<>();
+        int[] profileOf = new int[airplanes.size()];
+        for (int i = 0; i < airplanes.size(); i++) {
+            Airplane airplane = airplanes.get(i);
+            Integer profileId = profileIds.get(new PerformanceProfile(airplane));
+            if (profileId == null) {
+                profileId = representatives.size();
+                profileIds.put(new PerformanceProfile(airplane), profileId);
+                representatives.add(airplane);
+            }
+            profileOf[i] = profileId;
+        }
 
-        // If origin and destination are the same, no route is required
-        if (fromAirport.equals(toAirport)) {
-            System.out.println("Origin and destination are the same, routing is not needed.\nReturning to main menu:\n");
-            return null;
-        } else if(selectedAirplane.getAirspeed() <= 0){
-            System.out.println("Airspeed is not greater than 0, route is not possible.\nReturning to main menu:\n");
-            return null;
-        } else if(selectedAirplane.getTankSize() <= 0){
-            System.out.println("Tank Size is not greater than 0, route is not possible.\nReturning to main main menu:\n");
-            return null;
-        }
-
-        ArrayList<Edge> route = new ArrayList<>();
-        HashMap<Airport, Double> distanceMap = new HashMap<>();
-        PriorityQueue<Airport> queue = new PriorityQueue<>(Comparator.comparingDouble(a -> distanceMap.getOrDefault(a, Double.MAX_VALUE)));
-        HashMap<Airport, Edge> previousEdges = new HashMap<>();
-        HashMap<Airport, Double> fuelRemaining = new HashMap<>();
-
-        distanceMap.put(fromAirport, 0.0);
-        fuelRemaining.put(fromAirport, selectedAirplane.getTankSize());
-        queue.add(fromAirport);
-
-        System.out.println("Starting route search from " + fromAirport.getName() + " to " + toAirport.getName());
-        System.out.println("Selected airplane: " + selectedAirplane.displayInfo() + "\n");
-
-        // Dijkstra's algorithm 
-        while (!queue.isEmpty()) {
-            Airport current = queue.poll();
-
-            // Stop once the destination airport is reached
-            if (current.equals(toAirport)) {
-                break;
-            }
-
-            // Process all neighboring airports connected by edges
-            for (Edge edge : airportsGraph.getListings().getOrDefault(current, new ArrayList<>())) {
-                Airport nextAirport = edge.getDestinationNode();
-                double legDistance = edge.getDistance();
-
-                double airspeed = selectedAirplane.getAirspeed(); // in knots
-                double fuelBurnRate = selectedAirplane.getFuelBurnRate(); // in gallons/hour
-
-                double flightTimeHours = legDistance / airspeed;
-                double fuelRequired = flightTimeHours * fuelBurnRate;
-
-                double currentFuel = fuelRemaining.getOrDefault(current, 0.0);
-
-                String requiredFuel = (selectedAirplane.getType() == 3) ? "AVGAS" : "JA-a";
-                boolean canRefuel = Arrays.asList(nextAirport.getFuelTypes()).contains(requiredFuel);
-
-                double usableFuel = currentFuel;
-
-                // If fuel is insufficient, check if refueling is possible
-                if (usableFuel < fuelRequired) {
-                    if (!canRefuel) {
-                        continue;
-                    }
-                    usableFuel = selectedAirplane.getTankSize();
-                    if (usableFuel < fuelRequired) {
-                        continue;
-                    }
-                }
+        RoutingGraph routingGraph = graph.getRoutingGraph();
+        RouteResult[] profileResults = new RouteResult[representatives.size()];
+        IntStream.range(0, representatives.size()).parallel().forEach(p -> profileResults[p] = answerRequest(
+                routingGraph, new RouteRequest(fromAirport, toAirport, representatives.get(p))));
 
-                double remainingFuelAfterLeg = usableFuel - fuelRequired;
-                double newFuelLevel = canRefuel ? selectedAirplane.getTankSize() : remainingFuelAfterLeg;
-                double newDistance = distanceMap.get(current) + legDistance;
+        ArrayList<RouteResult> results = new ArrayList<>(airplanes.size());
+        for (int i = 0; i < airplanes.size(); i++) {
+            RouteResult shared = profileResults[profileOf[i]];
+            results.add(new RouteResult(new RouteRequest(fromAirport, toAirport, airplanes.get(i)),
+                    shared.getRoute(), shared.getFailureReason(), shared.isCached(),
+                    shared.getSearchStatistics(), shared.getElapsedNanos()));
+        }
+        return results;
+    }
 
-                // Update distances and fuel levels for the next airport
-                if (newDistance < distanceMap.getOrDefault(nextAirport, Double.MAX_VALUE)) {
-                    distanceMap.put(nextAirport, newDistance);
-                    fuelRemaining.put(nextAirport, newFuelLevel);
-                    previousEdges.put(nextAirport, edge);
-                    queue.add(nextAirport);
-                }
+    /**
+     * Displays the results of a fleet evaluation, one line per airplane.
+     *
+     * @param results The results returned by evaluateFleet.
+     * @return A formatted string listing the route of every airplane.
+     */
+    public String displayFleetEvaluation(ArrayList<RouteResult> results) {
+        StringBuilder evaluation = new StringBuilder();
+        evaluation.append("Fleet Evaluation:\n\n");
+        for (RouteResult result : results) {
+            Airplane airplane = result.getRequest().getAirplane();
+            evaluation.append("Key: " + airplane.getKey() + ", " + airplane.getMakeAndModel() + ": ");
+            if (result.isPossible()) {
+                evaluation.append(String.format("%.2f Nautical Miles, %.2f Hours, %d Legs",
+                        result.getDistance(), result.getFlightTime(), result.getRoute().size()));
+            } else {
+                evaluation.append("Not possible (" + result.getFailureReason() + ")");
+            }
+            evaluation.append("\n");
+        }
+        evaluation.append(LINE_SEPARATOR + "\n");
+        return evaluation.toString();
+    }
+
+    /**
+     * Reports the progress of one leg of a flight plan to the diagnostics listener and keeps
+     * its statistics as the last search statistics.
+     *
+     * @param result The result of the leg.
+     */
+    private void reportLeg(RouteResult result) {
+        lastSearchStatistics = result.getSearchStatistics();
+        if (diagnostics.isEnabled(DiagnosticLevel.INFO)) {
+            RouteRequest request = result.getRequest();
+            diagnostics.report(DiagnosticLevel.INFO, "Starting route search from " + request.getOrigin().getName()
+                    + " to " + request.getDestination().getName());
+            diagnostics.report(DiagnosticLevel.INFO,
+                    "Selected airplane: " + request.getAirplane().displayInfo() + "\n");
+            if (result.isCached()) {
+                diagnostics.report(DiagnosticLevel.INFO,
+                        result.isPossible() ? "Route successfully found (cached)." : "No route found (cached).");
+            } else {
+                diagnostics.report(DiagnosticLevel.INFO,
+                        result.isPossible() ? "Route successfully found." : "No route found.");
             }
         }
+        if (!result.isCached() && diagnostics.isEnabled(DiagnosticLevel.DEBUG)) {
+            diagnostics.report(DiagnosticLevel.DEBUG, result.getSearchStatistics().displayInfo());
+        }
+    }
 
-        // Reconstruct the route from the destination back to the origin
-        Airport step = toAirport;
-        while (previousEdges.containsKey(step)) {
-            Edge edge = previousEdges.get(step);
-            route.add(0, edge);
-            step = edge.getOriginNode();
+    /**
+     * Describes why a leg of a flight plan can not be flown, for the console.
+     *
+     * @param failedLeg The result of the leg that failed.
+     * @return The message to show.
+     */
+    private String describeFailure(RouteResult failedLeg) {
+        String reason = failedLeg.getFailureReason();
+        if (RouteResult.SAME_AIRPORTS.equals(reason)) {
+            return "Origin and destination are the same, routing is not needed.\nReturning to main menu:\n";
+        } else if (RouteResult.NO_AIRSPEED.equals(reason)) {
+            return "Airspeed is not greater than 0, route is not possible.\nReturning to main menu:\n";
+        } else if (RouteResult.NO_TANK.equals(reason)) {
+            return "Tank Size is not greater than 0, route is not possible.\nReturning to main main menu:\n";
         }
+        return "Flight plan not possible between " +
+                failedLeg.getRequest().getOrigin().getName() + " and " +
+                failedLeg.getRequest().getDestination().getName();
+    }
 
-        if (route.isEmpty()) {
-            System.out.println("No route found.");
+    /**
+     * Runs the search algorithm of the current routing mode between two airports.
+     *
+     * @param graph The routing graph to search.
+     * @param fromId The id of the starting airport.
+     * @param toId The id of the destination airport.
+     * @param selectedAirplane The airplane used for the flight.
+     * @param statistics The statistics to record the search's work in.
+     * @return The legs of the route, or an empty list if no route was found.
+     */
+    private ArrayList<Edge> searchRoute(RoutingGraph graph, int fromId, int toId, Airplane selectedAirplane,
+            SearchStatistics statistics) {
+        ArrayList<Edge> route;
+        if (routingMode == RoutingMode.BIDIRECTIONAL || routingMode == RoutingMode.BIDIRECTIONAL_A_STAR) {
+            BidirectionalRouteSearch search = new BidirectionalRouteSearch(graph, selectedAirplane,
+                    routingMode == RoutingMode.BIDIRECTIONAL_A_STAR, fuelLevels);
+            route = search.search(fromId, toId, parallelBidirectional, statistics);
+            if (route == null) {
+                // The two sides did not join within the fuel rules, so search from the origin only
+                route = new FuelLabelSearch(graph, selectedAirplane, fuelLevels).search(fromId, toId, false,
+                        statistics);
+            }
+        } else if (routingMode == RoutingMode.CONTRACTION_HIERARCHY) {
+            ContractionHierarchy hierarchy = (hierarchyManager == null) ? null
+                    : hierarchyManager.getHierarchy(selectedAirplane, graph);
+            route = (hierarchy == null) ? null
+                    : hierarchy.findRoute(graph.getAirport(fromId), graph.getAirport(toId), statistics);
+            if (route == null || route.isEmpty() || !BidirectionalRouteSearch.isFlyable(route, selectedAirplane)) {
+                // No hierarchy for this profile yet, or every route needs legs the hierarchy leaves out.
+                // A flyable route is kept even if a route through those legs would be shorter.
+                route = new FuelLabelSearch(graph, selectedAirplane, fuelLevels).search(fromId, toId, false,
+                        statistics);
+            }
         } else {
-            System.out.println("Route successfully found.");
+            route = new FuelLabelSearch(graph, selectedAirplane, fuelLevels).search(fromId, toId,
+                    routingMode == RoutingMode.A_STAR, statistics);
         }
-
         return route;
     }
 
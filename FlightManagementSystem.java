@@ -1,3 +1,4 @@
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -14,6 +15,7 @@ class FlightManagementSystem {
     AirportManager airportManager;
     AirplaneManager airplaneManager;
     private static final Scanner scanner = new Scanner(System.in);
+    private static final int MAX_AIRPORT_MATCHES = 50; // Longest list of airports offered to choose from
 
     /**
      * Entry point for the Flight Management System application.
@@ -30,6 +32,8 @@ class FlightManagementSystem {
                 System.out.println(e.getMessage());
             }
         }
+        // Queued journal changes and compactions still writing a CSV file must finish
+        MutationJournal.awaitWrites();
     }
 
     /**
@@ -124,15 +128,17 @@ class FlightManagementSystem {
      * @return A boolean value to quit using the software.
      */
     private boolean displayOptions() {
+        flight = new Flight();
+        flight.setHierarchyManager(new HierarchyManager(new File("hierarchies")));
         // Initially populating databases
         updateDatabases();
-        flight = new Flight();
         System.out.println("-- THIS SOFTWARE IS NOT TO BE USED FOR FLIGHT PLANNING OR NAVIGATIONAL PURPOSE --\n\n");
         while (true) {
             System.out.println("1. Manage Airports");
             System.out.println("2. Manage Airplanes");
             System.out.println("3. Plan a Flight Route");
             System.out.println("4. Close Flight Planning System");
+            System.out.println("5. Evaluate the Fleet for a Flight");
 
             int choice = getUserInputInt();
 
@@ -152,11 +158,20 @@ class FlightManagementSystem {
                     if (flightDestinations == null || flightDestinations.size() <= 1) {
                         break;
                     }
-                    flight.planFlight(flightDestinations, airplaneToUse, airportManager.getAirports());
+                    flight.planFlight(flightDestinations, airplaneToUse, airportManager.getGraph());
                     break;
                 case 4:
                     System.out.println("Thank you for using this software.");
                     return true;
+                case 5:
+                    ArrayList<Airport> fleetDestinations = handleAirportChoice();
+                    if (fleetDestinations == null || fleetDestinations.size() <= 1) {
+                        break;
+                    }
+                    ArrayList<RouteResult> fleetResults = flight.evaluateFleet(fleetDestinations.get(0),
+                            fleetDestinations.get(1), airplaneManager.getAirplanes(), airportManager.getGraph());
+                    System.out.println(flight.displayFleetEvaluation(fleetResults));
+                    break;
                 default:
                     System.out.println("Invalid choice, please enter a valid option. \n");
             }
@@ -169,6 +184,17 @@ class FlightManagementSystem {
     private void updateDatabases() {
         airportManager = new AirportManager();
         airplaneManager = new AirplaneManager();
+        updateMaxLegDistance();
+        airportManager.addListener(flight.getRouteCache());
+        airplaneManager.addListener(flight.getRouteCache());
+    }
+
+    /**
+     * Bounds the routing graph's legs by the fleet's maximum range after an airplane changes.
+     * The graph is only rebuilt if the maximum range has changed.
+     */
+    private void updateMaxLegDistance() {
+        airportManager.setMaxLegDistance(airplaneManager.getMaxRange());
     }
 
     /**
@@ -186,15 +212,14 @@ class FlightManagementSystem {
         System.out.println("Available Airplanes:");
         airplaneManager.displayAllAirplanes();
 
-        System.out.println("\nEnter airplane key (0 to " + (airplanes.size() - 1) + "):");
-        int airplaneIndex = getUserInputInt();
+        System.out.println("\nEnter airplane key:");
+        Airplane airplane = airplaneManager.getAirplane(getUserInputInt());
 
-        if (airplaneIndex < 0 || airplaneIndex >= airplanes.size()) {
+        if (airplane == null) {
             System.out.println("Invalid key, please try again.");
-            return null;
         }
 
-        return airplanes.get(airplaneIndex);
+        return airplane;
     }
 
     /**
@@ -275,31 +300,14 @@ class FlightManagementSystem {
 
     /**
      * Finds airports that match the user's input either exactly or partially.
-     * Exact matches are returned first, followed by partial matches.
+     * Exact matches are returned first, followed by airports whose identifier or name
+     * starts with the input, then other partial matches, up to MAX_AIRPORT_MATCHES.
      *
      * @param input The user's search query for airport name or ICAO code.
      * @return A list of matching Airport objects.
      */
     private ArrayList<Airport> findMatchingAirports(String input) {
-        ArrayList<Airport> exactMatches = new ArrayList<>();
-        ArrayList<Airport> partialMatches = new ArrayList<>();
-        String search = input.toLowerCase();
-
-        for (Airport airport : airportManager.getAirports()) {
-            String identifier = airport.getIdentifier().toLowerCase();
-            String name = airport.getName().toLowerCase();
-
-            if (identifier.equals(search) || name.equals(search)) {
-                exactMatches.add(airport);
-            } else if (identifier.contains(search) || name.contains(search)) {
-                partialMatches.add(airport);
-            }
-        }
-
-        // Return exact matches first, then partial matches (they wont overlap b/c
-        // arraylist)
-        exactMatches.addAll(partialMatches);
-        return exactMatches;
+        return airportManager.getSearchIndex().search(input, MAX_AIRPORT_MATCHES);
     }
 
     /**
@@ -409,7 +417,6 @@ class FlightManagementSystem {
                     }
 
                     airportManager.addAirport(new Airport(icao, name, latitude, longitude, frequencies, fuelTypes));
-                    updateDatabases();
                     break;
                 case 3:
                     // Handles input and editing of an existing airport
@@ -532,7 +539,6 @@ class FlightManagementSystem {
                                 newFrequencies, newFuelTypes);
 
                         airportManager.editAirport(airport, updatedAirport);
-                        updateDatabases();
                     } else {
                         System.out.println("Airport not found.");
                     }
@@ -578,7 +584,6 @@ class FlightManagementSystem {
                         }
 
                         airportManager.deleteAirport(toDelete);
-                        updateDatabases();
                         System.out.println("Airport deleted successfully.");
                         break;
                     }
@@ -646,24 +651,19 @@ class FlightManagementSystem {
                         }
                     }
 
-                    airplaneManager.addAirplane(new Airplane(airplaneManager.getAirplanes().size(), model, type,
+                    airplaneManager.addAirplane(new Airplane(airplaneManager.getNextKey(), model, type,
                             tankSize, fuelBurnRate, airspeed));
-                    updateDatabases();
+                    updateMaxLegDistance();
                     break;
                 case 3:
                     airplaneManager.displayAllAirplanes();
                     String yesOrNoInput;
-                    int modelToEditIndex;
+                    int modelToEditKey;
                     Airplane airplane;
                     System.out.println("\nEnter the airplane's key to edit:");
                     while (true) {
-                        modelToEditIndex = getUserInputInt();
-                        if (modelToEditIndex < 0 || modelToEditIndex >= airplaneManager.getAirplanes().size()) {
-                            System.out.println("Key does not exist, please try again.");
-                            continue;
-                        }
-
-                        airplane = airplaneManager.getAirplanes().get(modelToEditIndex);
+                        modelToEditKey = getUserInputInt();
+                        airplane = airplaneManager.getAirplane(modelToEditKey);
                         if (airplane != null) {
                             break;
                         } else {
@@ -775,9 +775,9 @@ class FlightManagementSystem {
                         }
 
                         // Update airplane
-                        airplaneManager.editAirplane(modelToEditIndex, new Airplane(modelToEditIndex, newModel,
+                        airplaneManager.editAirplane(modelToEditKey, new Airplane(modelToEditKey, newModel,
                                 newType, newTankSize, newFuelBurnRate, newAirspeed));
-                        updateDatabases();
+                        updateMaxLegDistance();
                     } else {
                         System.out.println("Airplane not found.");
                     }
@@ -786,17 +786,10 @@ class FlightManagementSystem {
                     airplaneManager.displayAllAirplanes();
                     System.out.println("\nEnter the airplane's key to delete:");
                     while (true) {
-                        int modelToDeleteIndex = getUserInputInt();
-
-                        if (modelToDeleteIndex < 0 || modelToDeleteIndex >= airplaneManager.getAirplanes().size()) {
-                            System.out.println("Key does not exist, please try again.");
-                            continue;
-                        }
-
-                        Airplane toDelete = airplaneManager.getAirplanes().get(modelToDeleteIndex);
+                        Airplane toDelete = airplaneManager.getAirplane(getUserInputInt());
                         if (toDelete != null) {
                             airplaneManager.deleteAirplane(toDelete);
-                            updateDatabases();
+                            updateMaxLegDistance();
                             break;
                         } else {
                             System.out.println("Key does not exist, please try again.");
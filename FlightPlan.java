@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+
+/**
+ * The outcome of planning a flight through a list of airports: the result of every leg
+ * that was planned, in order. Planning stops at the first leg that can not be flown, so
+ * a plan that is not possible ends with the failed leg.
+ */
+public class FlightPlan {
+    private final ArrayList<RouteResult> legResults;
+    private final boolean possible;
+
+    /**
+     * Constructs a flight plan from the results of its legs.
+     *
+     * @param legResults The result of every leg that was planned, in order.
+     * @param possible Whether every leg of the itinerary can be flown.
+     */
+    FlightPlan(ArrayList<RouteResult> legResults, boolean possible) {
+        this.legResults = legResults;
+        this.possible = possible;
+    }
+
+    /**
+     * Returns whether the whole itinerary can be flown.
+     *
+     * @return true if every leg has a route.
+     */
+    public boolean isPossible() {
+        return possible;
+    }
+
+    /**
+     * Returns the result of every leg that was planned.
+     *
+     * @return The leg results, in itinerary order.
+     */
+    public ArrayList<RouteResult> getLegResults() {
+        return new ArrayList<>(legResults);
+    }
+
+    /**
+     * Returns the leg that could not be flown.
+     *
+     * @return The result of the failed leg, or null if the plan is possible.
+     */
+    public RouteResult getFailedLeg() {
+        return possible ? null : legResults.get(legResults.size() - 1);
+    }
+
+    /**
+     * Returns the flight legs of the whole itinerary.
+     *
+     * @return The legs of every route, in order, or an empty list if the plan is not possible.
+     */
+    public ArrayList<Edge> getLegs() {
+        ArrayList<Edge> legs = new ArrayList<>();
+        if (possible) {
+            for (RouteResult result : legResults) {
+                legs.addAll(result.getRoute());
+            }
+        }
+        return legs;
+    }
+
+    /**
+     * Returns the total distance of the itinerary.
+     *
+     * @return The distance in nautical miles, or infinity if the plan is not possible.
+     */
+    public double getDistance() {
+        if (!possible) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double distance = 0;
+        for (RouteResult result : legResults) {
+            distance += result.getDistance();
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Finds the shortest route between two airports while keeping track of how much fuel is
+ * on board, by searching over (airport, fuel level) states instead of airports alone.
+ * <p>
+ * Keeping a single fuel value per airport throws away a longer path that arrives with
+ * more fuel, which can be the only way through airports that do not sell the airplane's
+ * fuel. Here the tank is divided into a fixed number of fuel levels, and every airport
+ * has one label slot per level holding the shortest distance and the fuel of the best
+ * path seen for that level. A new label is pruned if another label at the same airport
+ * is both at least as short and has at least as much fuel. Airports that sell the fuel
+ * always fill the tank, so they only ever use the top level.
+ * <p>
+ * Memory is bounded by airports times fuel levels, and the search settles labels in
+ * order of distance (plus the straight-line estimate in A* mode), so the first label
+ * of the destination that is settled gives the route. The labels are kept in a borrowed
+ * SearchWorkspace, so a search allocates nothing but the route it returns.
+ */
+public class FuelLabelSearch {
+    /** The default number of fuel levels the tank is divided into. */
+    public static final int DEFAULT_FUEL_LEVELS = 16;
+
+    private final RoutingGraph graph;
+    private final Airplane airplane;
+    private final int fuelLevels;
+    private final int requiredFuelMask;
+
+    /**
+     * Constructs a search over a graph for one airplane.
+     *
+     * @param graph      the graph to search
+     * @param airplane   the airplane used for the flight
+     * @param fuelLevels the number of fuel levels the tank is divided into
+     */
+    public FuelLabelSearch(RoutingGraph graph, Airplane airplane, int fuelLevels) {
+        this.graph = graph;
+        this.airplane = airplane;
+        this.fuelLevels = Math.max(1, fuelLevels);
+        this.requiredFuelMask = airplane.getRequiredFuelMask();
+    }
+
+    /**
+     * Searches for the shortest route between two airports.
+     *
+     * @param fromId       the id of the starting airport
+     * @param toId         the id of the destination airport
+     * @param useHeuristic whether to run A* instead of Dijkstra's algorithm
+     * @param statistics   the statistics to record the search's work in
+     * @return the legs of the route, or an empty list if no route was found
+     */
+    public ArrayList<Edge> search(int fromId, int toId, boolean useHeuristic, SearchStatistics statistics) {
+        SearchWorkspace workspace = SearchWorkspace.acquire(graph.size(), fuelLevels);
+        try {
+            workspace.singleDestination[0] = toId;
+            run(workspace, fromId, workspace.singleDestination, useHeuristic ? graph.getAirport(toId) : null,
+                    statistics);
+            return route(workspace, workspace.getSettledState(toId));
+        } finally {
+            SearchWorkspace.release(workspace);
+        }
+    }
+
+    /**
+     * Searches from one airport to many at once. The search stops as soon as the shortest
+     * route to every destination is known, and only the length and the number of legs of
+     * each route are kept.
+     *
+     * @param fromId     the id of the starting airport
+     * @param toIds      the ids of the destination airports
+     * @param distances  filled with the length of each route in knots, infinity if there is none
+     * @param legCounts  filled with the number of legs of each route, -1 if there is none
+     * @param statistics the statistics to record the search's work in
+     */
+    public void searchMany(int fromId, int[] toIds, double[] distances, int[] legCounts,
+            SearchStatistics statistics) {
+        SearchWorkspace workspace = SearchWorkspace.acquire(graph.size(), fuelLevels);
+        try {
+            run(workspace, fromId, toIds, null, statistics);
+            for (int i = 0; i < toIds.length; i++) {
+                int state = workspace.getSettledState(toIds[i]);
+                if (state < 0) {
+                    distances[i] = Double.POSITIVE_INFINITY;
+                    legCounts[i] = -1;
+                    continue;
+                }
+                distances[i] = workspace.getDistance(state);
+                int legs = 0;
+                for (int step = state; workspace.getPreviousState(step) >= 0; step = workspace.getPreviousState(step)) {
+                    legs++;
+                }
+                legCounts[i] = legs;
+            }
+        } finally {
+            SearchWorkspace.release(workspace);
+        }
+    }
+
+    /**
+     * Settles labels in order of distance until the shortest label of every destination
+     * has been settled, or no labels are left.
+     *
+     * @param workspace  the workspace to keep the labels in
+     * @param fromId     the id of the starting airport
+     * @param toIds      the ids of the destination airports
+     * @param toAirport  the airport A* heads for, or null to run Dijkstra's algorithm
+     * @param statistics the statistics to record the search's work in
+     */
+    private void run(SearchWorkspace workspace, int fromId, int[] toIds, Airport toAirport,
+            SearchStatistics statistics) {
+        double tankSize = airplane.getTankSize();
+        int destinationsLeft = 0;
+        for (int toId : toIds) {
+            if (workspace.markDestination(toId)) {
+                destinationsLeft++;
+            }
+        }
+        IndexedMinHeap queue = workspace.queue;
+        NeighbourRow neighbours = workspace.neighbours;
+        long labelsCreated = 0;
+        long labelsPruned = 0;
+
+        int startState = fromId * fuelLevels + fuelLevel(tankSize, tankSize, fuelLevels);
+        workspace.setLabel(startState, 0.0, tankSize, -1, 0.0);
+        queue.insertOrDecrease(startState, 0.0);
+        labelsCreated++;
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int current = state / fuelLevels;
+
+            // The first settled label of a destination is the shortest
+            if (workspace.isDestination(current) && workspace.getSettledState(current) < 0) {
+                workspace.setSettledState(current, state);
+                if (--destinationsLeft == 0) {
+                    break;
+                }
+            }
+
+            statistics.countExpansion();
+            double currentDistance = workspace.getDistance(state);
+            double currentFuel = workspace.getFuel(state);
+            graph.loadNeighbours(current, neighbours);
+            for (int i = neighbours.start; i < neighbours.end; i++) {
+                int next = neighbours.targets[i];
+                double legDistance = neighbours.distances[i];
+                statistics.countRelaxation();
+
+                double fuelRequired = airplane.getFuelRequired(legDistance);
+                boolean canRefuel = (graph.getFuelMask(next) & requiredFuelMask) != 0;
+                double usableFuel = currentFuel;
+
+                // If fuel is insufficient, check if refueling is possible
+                if (usableFuel < fuelRequired) {
+                    if (!canRefuel || tankSize < fuelRequired) {
+                        continue;
+                    }
+                    usableFuel = tankSize;
+                }
+
+                double newFuel = canRefuel ? tankSize : usableFuel - fuelRequired;
+                double newDistance = currentDistance + legDistance;
+                int level = fuelLevel(newFuel, tankSize, fuelLevels);
+
+                if (isDominated(workspace, next, level, newDistance, newFuel)) {
+                    labelsPruned++;
+                    continue;
+                }
+
+                int nextState = next * fuelLevels + level;
+                workspace.setLabel(nextState, newDistance, newFuel, state, legDistance);
+                labelsCreated++;
+
+                double key = newDistance;
+                if (toAirport != null) {
+                    if (!workspace.hasRemainingEstimate(next)) {
+                        workspace.setRemainingEstimate(next, Edge.distanceBetween(graph.getAirport(next), toAirport));
+                    }
+                    key += workspace.getRemainingEstimate(next);
+                }
+                queue.insertOrDecrease(nextState, key);
+            }
+        }
+        statistics.addHeapCounts(queue);
+        statistics.addLabels(labelsCreated, labelsPruned);
+    }
+
+    /**
+     * Returns the fuel level a fuel amount falls into, from 0 to {@code fuelLevels - 1}.
+     *
+     * @param fuelAmount the fuel on board in gallons
+     * @param tankSize   the size of the tank in gallons
+     * @param fuelLevels the number of fuel levels the tank is divided into
+     * @return the fuel level
+     */
+    static int fuelLevel(double fuelAmount, double tankSize, int fuelLevels) {
+        int level = (int) (fuelAmount / tankSize * fuelLevels);
+        return Math.max(0, Math.min(fuelLevels - 1, level));
+    }
+
+    /**
+     * Returns whether a new label at an airport can be dropped because a label with at
+     * least as much fuel is already at least as short, or because its own level already
+     * holds a shorter label. Only the new label's level and the levels above it can hold
+     * labels with at least as much fuel.
+     *
+     * @param workspace the workspace holding the labels
+     * @param airport   the id of the airport
+     * @param level     the fuel level of the new label
+     * @param distance  the distance of the new label
+     * @param fuelAmount the fuel of the new label
+     * @return true if the new label should be pruned
+     */
+    private boolean isDominated(SearchWorkspace workspace, int airport, int level, double distance,
+            double fuelAmount) {
+        int firstState = airport * fuelLevels;
+        if (workspace.getDistance(firstState + level) <= distance) {
+            return true; // The level keeps its shortest label
+        }
+        for (int state = firstState + level + 1; state < firstState + fuelLevels; state++) {
+            if (workspace.getDistance(state) <= distance && workspace.getFuel(state) >= fuelAmount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reconstructs the route to a state from the origin.
+     *
+     * @param workspace the workspace holding the labels
+     * @param state     the state at the end of the route, or -1
+     * @return the legs of the route, or an empty list if the state is -1
+     */
+    private ArrayList<Edge> route(SearchWorkspace workspace, int state) {
+        ArrayList<Edge> route = new ArrayList<>();
+        while (state >= 0 && workspace.getPreviousState(state) >= 0) {
+            int previous = workspace.getPreviousState(state);
+            route.add(new Edge(graph.getAirport(previous / fuelLevels), graph.getAirport(state / fuelLevels),
+                    workspace.getLegDistance(state)));
+            state = previous;
+        }
+        Collections.reverse(route);
+        return route;
+    }
+}
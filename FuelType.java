@@ -0,0 +1,91 @@
+/**
+ * The fuel types airports can sell. Each type has one bit in a fuel mask, so the fuel
+ * types of an airport are stored as a single int and checking whether an airport sells
+ * the fuel an airplane needs is one bit test.
+ */
+public enum FuelType {
+    /** Aviation gasoline, used by prop planes. */
+    AVGAS("AVGAS"),
+    /** Jet A fuel, used by jets and turboprops. */
+    JET_A("JA-a");
+
+    private final String name;
+
+    /**
+     * Constructs a fuel type.
+     *
+     * @param name The name of the fuel type as written in Airports.csv.
+     */
+    FuelType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the fuel type as written in Airports.csv.
+     *
+     * @return The name of the fuel type.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the bit of the fuel type in a fuel mask.
+     *
+     * @return The fuel mask holding only this fuel type.
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Returns the fuel type with exactly the given name, as the fuel lists of airports have
+     * always been compared.
+     *
+     * @param name The name of the fuel type.
+     * @return The fuel type, or null if no fuel type has that name.
+     */
+    public static FuelType fromName(String name) {
+        for (FuelType fuelType : values()) {
+            if (fuelType.name.equals(name)) {
+                return fuelType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the fuel mask of a list of fuel type names. Names that are not a known
+     * fuel type are left out.
+     *
+     * @param names The names of the fuel types.
+     * @return The fuel mask with the bit of every known fuel type set.
+     */
+    public static int maskOf(String[] names) {
+        int mask = 0;
+        for (String name : names) {
+            FuelType fuelType = fromName(name);
+            if (fuelType != null) {
+                mask |= fuelType.mask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the fuel mask of every airport in an id-indexed array, for graphs that look
+     * fuel types up by airport id.
+     *
+     * @param airports The airports indexed by id, null for ids that are not in use.
+     * @return The fuel mask of each airport, 0 for ids that are not in use.
+     */
+    static int[] masksOf(Airport[] airports) {
+        int[] masks = new int[airports.length];
+        for (int id = 0; id < airports.length; id++) {
+            if (airports[id] != null) {
+                masks[id] = airports[id].getFuelMask();
+            }
+        }
+        return masks;
+    }
+}
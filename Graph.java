@@ -3,9 +3,31 @@ import java.util.*;
 /**
  * Represents a weighted undirected graph where nodes are airports and
  * edges represent connections between them.
+ * Each airport gets an int id, and its connections are stored in primitive
+ * arrays rather than as Edge objects. Route searches work on a CompactGraph
+ * snapshot, which is rebuilt only after the graph has changed.
+ * Airports are only connected when they are within the graph's maximum leg
+ * distance of each other, and a SpatialGrid is used to find those neighbours.
+ * In lazy mode no connections are stored, and searches run on a LazyGraph that
+ * generates them as airports are expanded.
  */
 public class Graph {
-    private HashMap<Airport, ArrayList<Edge>> nodeListings;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double maxLegDistance; // Longest connection kept, in knots
+    private boolean lazy;
+    private boolean memoizeLazyRows = true;
+    private SpatialGrid grid;
+    private HashMap<String, Integer> nodeIds; // Airport id by ICAO identifier
+    private ArrayList<Airport> nodes; // Airport by id, null for ids that are free
+    private ArrayDeque<Integer> freeIds;
+    private HashMap<Integer, HashSet<Integer>> oneWaySources; // Ids with an addEdge connection to each id
+    private int[][] rowTargets;
+    private double[][] rowDistances;
+    private float[][] rowHeadings;
+    private int[] rowSizes;
+    private CompactGraph compactGraph;
+    private LazyGraph lazyGraph;
 
     /**
      * Constructs a new Graph with the given list of airports.
@@ -15,7 +37,44 @@ public class Graph {
      * @param airports the initial list of airports to include in the graph
      */
     public Graph(ArrayList<Airport> airports) {
-        nodeListings = new HashMap<>();
+        this(airports, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Constructs a new Graph with the given list of airports, only connecting
+     * airports that are at most the given distance apart. Legs longer than the
+     * range of every airplane that will use the graph can never be flown, so
+     * the range of the selected airplane or of the whole fleet is a safe bound.
+     *
+     * @param airports       the initial list of airports to include in the graph
+     * @param maxLegDistance the longest connection to keep in knots, or infinity for a full mesh
+     */
+    public Graph(ArrayList<Airport> airports, double maxLegDistance) {
+        this(airports, maxLegDistance, false);
+    }
+
+    /**
+     * Constructs a new Graph with the given list of airports, optionally in lazy mode.
+     * A lazy graph only keeps track of its airports; connections and their distances
+     * are generated during route searches, and headings only for the legs of a route.
+     *
+     * @param airports       the initial list of airports to include in the graph
+     * @param maxLegDistance the longest connection to keep in knots, or infinity for a full mesh
+     * @param lazy           whether connections are generated on demand instead of stored
+     */
+    public Graph(ArrayList<Airport> airports, double maxLegDistance, boolean lazy) {
+        this.maxLegDistance = maxLegDistance;
+        this.lazy = lazy;
+        grid = new SpatialGrid(maxLegDistance);
+        nodeIds = new HashMap<>();
+        nodes = new ArrayList<>();
+        freeIds = new ArrayDeque<>();
+        oneWaySources = new HashMap<>();
+        int capacity = Math.max(INITIAL_CAPACITY, airports.size());
+        rowTargets = new int[capacity][];
+        rowDistances = new double[capacity][];
+        rowHeadings = new float[capacity][];
+        rowSizes = new int[capacity];
         for (Airport airport : airports) {
             addNode(airport);
         }
@@ -23,31 +82,145 @@ public class Graph {
 
     /**
      * Returns the adjacency list of the graph.
+     * The edges are created on every call from the stored arrays, so this is meant
+     * for code that still needs Edge objects rather than for route searches.
      *
      * @return a HashMap where keys are Airport nodes and values are lists of outgoing Edges
      */
     public HashMap<Airport, ArrayList<Edge>> getListings() {
+        HashMap<Airport, ArrayList<Edge>> nodeListings = new HashMap<>();
+        RoutingGraph routingGraph = getRoutingGraph();
+        NeighbourRow row = new NeighbourRow();
+        for (int id = 0; id < routingGraph.size(); id++) {
+            Airport airport = routingGraph.getAirport(id);
+            if (airport == null) {
+                continue;
+            }
+            routingGraph.loadNeighbours(id, row);
+            ArrayList<Edge> edges = new ArrayList<>(row.end - row.start);
+            for (int i = row.start; i < row.end; i++) {
+                edges.add(new Edge(airport, routingGraph.getAirport(row.targets[i]), row.distances[i]));
+            }
+            nodeListings.put(airport, edges);
+        }
         return nodeListings;
     }
 
+    /**
+     * Returns the longest connection kept in the graph.
+     *
+     * @return the maximum leg distance in knots
+     */
+    public double getMaxLegDistance() {
+        return maxLegDistance;
+    }
+
+    /**
+     * Returns whether the graph is in lazy mode.
+     *
+     * @return true if connections are generated on demand
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets whether a lazy graph keeps the rows it has generated, so that airports
+     * expanded by many searches only have their neighbours calculated once.
+     *
+     * @param memoize true to keep generated rows
+     */
+    public void setMemoizeLazyRows(boolean memoize) {
+        if (memoize != memoizeLazyRows) {
+            memoizeLazyRows = memoize;
+            lazyGraph = null;
+        }
+    }
+
+    /**
+     * Returns the snapshot of the graph that route searches should run on: a
+     * LazyGraph in lazy mode and a CompactGraph otherwise.
+     *
+     * @return the RoutingGraph for the current state of the graph
+     */
+    public RoutingGraph getRoutingGraph() {
+        if (lazy) {
+            if (lazyGraph == null) {
+                lazyGraph = new LazyGraph(nodes.toArray(new Airport[0]), new HashMap<>(nodeIds), maxLegDistance,
+                        memoizeLazyRows);
+            }
+            return lazyGraph;
+        }
+        return getCompactGraph();
+    }
+
+    /**
+     * Returns a compressed sparse row snapshot of the graph for route searches.
+     * The snapshot is cached until the next change to the graph. A lazy graph has
+     * no stored connections, so its snapshot only contains the airports.
+     *
+     * @return the CompactGraph for the current state of the graph
+     */
+    public CompactGraph getCompactGraph() {
+        if (compactGraph == null) {
+            compactGraph = buildCompactGraph();
+        }
+        return compactGraph;
+    }
+
+    /**
+     * Returns the airport node with the given ICAO identifier.
+     *
+     * @param identifier the ICAO identifier of the airport
+     * @return the Airport in the graph, or null if there is none with the identifier
+     */
+    public Airport getAirport(String identifier) {
+        Integer id = nodeIds.get(identifier);
+        return (id == null) ? null : nodes.get(id);
+    }
+
     /**
      * Adds a new airport node to the graph if it does not already exist.
-     * Automatically creates edges between the new node and all existing nodes,
-     * forming an undirected connection.
+     * Automatically creates edges between the new node and all existing nodes
+     * within the maximum leg distance, forming an undirected connection.
      *
      * @param newAirport the Airport to be added as a node
      */
     public void addNode(Airport newAirport) {
-        if (!nodeListings.containsKey(newAirport)) {
-            nodeListings.put(newAirport, new ArrayList<>());
-            for (Airport airport : nodeListings.keySet()) {
-                if (!airport.equals(newAirport)) {
-                    Edge edge1 = new Edge(newAirport, airport); // edge from new to existing
-                    Edge edge2 = new Edge(airport, newAirport); // edge from existing to new
-                    nodeListings.get(newAirport).add(edge1);
-                    nodeListings.get(airport).add(edge2);
+        if (!nodeIds.containsKey(newAirport.getIdentifier())) {
+            int newId = allocateId(newAirport);
+            if (lazy) {
+                lazyGraph = null;
+                return;
+            }
+            int[] candidates = grid.getCandidates(newAirport.getLatitude(), newAirport.getLongitude());
+            Airport[] row = new Airport[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                row[i] = nodes.get(candidates[i]);
+            }
+            double[] distances = new double[candidates.length];
+            DistanceKernel.distances(newAirport, row, candidates.length, distances);
+
+            // Keep only the airports in range, then work out the headings of their connections
+            int count = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                if (distances[i] <= maxLegDistance) {
+                    candidates[count] = candidates[i];
+                    row[count] = row[i];
+                    distances[count] = distances[i];
+                    count++;
                 }
             }
+            double[] outgoingHeadings = new double[count];
+            double[] incomingHeadings = new double[count];
+            DistanceKernel.headingsFrom(newAirport, row, count, outgoingHeadings);
+            DistanceKernel.headingsTo(newAirport, row, count, incomingHeadings);
+            for (int i = 0; i < count; i++) {
+                appendEdge(newId, candidates[i], distances[i], outgoingHeadings[i]); // edge from new to existing
+                appendEdge(candidates[i], newId, distances[i], incomingHeadings[i]); // edge from existing to new
+            }
+            grid.add(newId, newAirport.getLatitude(), newAirport.getLongitude());
+            compactGraph = null;
         }
     }
 
@@ -55,14 +228,174 @@ public class Graph {
      * Adds a directed edge from one airport to another.
      * This does not add a reverse edge, so it represents a one-way connection.
      * Useful for customizing connectivity beyond the default full-mesh behavior.
+     * Lazy graphs only generate connections by range, so this has no effect on them.
      *
      * @param fromAirport the origin Airport
      * @param toAirport   the destination Airport
      */
     public void addEdge(Airport fromAirport, Airport toAirport) {
-        if (nodeListings.containsKey(fromAirport) && nodeListings.containsKey(toAirport)) {
-            Edge edge = new Edge(fromAirport, toAirport);
-            nodeListings.get(fromAirport).add(edge);
+        Integer fromId = nodeIds.get(fromAirport.getIdentifier());
+        Integer toId = nodeIds.get(toAirport.getIdentifier());
+        if (!lazy && fromId != null && toId != null) {
+            appendEdge(fromId, toId, Edge.distanceBetween(fromAirport, toAirport),
+                    Edge.headingBetween(fromAirport, toAirport));
+            // The destination has no connection back, so it is remembered for removeNode
+            oneWaySources.computeIfAbsent(toId, id -> new HashSet<>()).add(fromId);
+            compactGraph = null;
+        }
+    }
+
+    /**
+     * Removes an airport node from the graph along with every edge that points to it.
+     * Only the adjacency lists of the removed node's neighbours, and of the airports with
+     * a one-way connection to it, are touched, so the rest of the graph is left as is and
+     * no connection leads to the id once it is reused. The node is found by its ICAO identifier.
+     *
+     * @param oldAirport the Airport to be removed
+     */
+    public void removeNode(Airport oldAirport) {
+        Integer oldId = nodeIds.remove(oldAirport.getIdentifier());
+        if (oldId == null) {
+            return;
+        }
+        oldAirport = nodes.get(oldId); // The instance whose position is in the grid
+        for (int i = 0; i < rowSizes[oldId]; i++) {
+            int target = rowTargets[oldId][i];
+            removeEdge(target, oldId);
+            HashSet<Integer> targetSources = oneWaySources.get(target);
+            if (targetSources != null && targetSources.remove(oldId) && targetSources.isEmpty()) {
+                oneWaySources.remove(target);
+            }
+        }
+        HashSet<Integer> sources = oneWaySources.remove(oldId);
+        if (sources != null) {
+            for (int source : sources) {
+                removeEdge(source, oldId);
+            }
+        }
+        rowTargets[oldId] = null;
+        rowDistances[oldId] = null;
+        rowHeadings[oldId] = null;
+        rowSizes[oldId] = 0;
+        grid.remove(oldId, oldAirport.getLatitude(), oldAirport.getLongitude());
+        nodes.set(oldId, null);
+        freeIds.push(oldId);
+        compactGraph = null;
+        lazyGraph = null;
+    }
+
+    /**
+     * Replaces an airport node with an updated version of it, rebuilding only the
+     * edges that touch the replaced node.
+     *
+     * @param oldAirport the Airport currently in the graph
+     * @param newAirport the Airport that takes its place
+     */
+    public void replaceNode(Airport oldAirport, Airport newAirport) {
+        removeNode(oldAirport);
+        addNode(newAirport);
+    }
+
+    /**
+     * Gives an airport an id, reusing the id of a removed airport when one is free.
+     *
+     * @param airport the Airport to register
+     * @return the id of the airport
+     */
+    private int allocateId(Airport airport) {
+        int id;
+        if (!freeIds.isEmpty()) {
+            id = freeIds.pop();
+            nodes.set(id, airport);
+        } else {
+            id = nodes.size();
+            nodes.add(airport);
+            if (id >= rowSizes.length) {
+                int capacity = rowSizes.length * 2;
+                rowTargets = Arrays.copyOf(rowTargets, capacity);
+                rowDistances = Arrays.copyOf(rowDistances, capacity);
+                rowHeadings = Arrays.copyOf(rowHeadings, capacity);
+                rowSizes = Arrays.copyOf(rowSizes, capacity);
+            }
         }
+        nodeIds.put(airport.getIdentifier(), id);
+        compactGraph = null;
+        if (lazy) {
+            return id;
+        }
+        rowTargets[id] = new int[INITIAL_CAPACITY];
+        rowDistances[id] = new double[INITIAL_CAPACITY];
+        rowHeadings[id] = new float[INITIAL_CAPACITY];
+        rowSizes[id] = 0;
+        return id;
+    }
+
+    /**
+     * Appends a connection to the row of an airport, growing the row when it is full.
+     *
+     * @param fromId   the id of the origin airport
+     * @param toId     the id of the destination airport
+     * @param distance the distance in knots
+     * @param heading  the heading in degrees
+     */
+    private void appendEdge(int fromId, int toId, double distance, double heading) {
+        int size = rowSizes[fromId];
+        if (size == rowTargets[fromId].length) {
+            rowTargets[fromId] = Arrays.copyOf(rowTargets[fromId], size * 2);
+            rowDistances[fromId] = Arrays.copyOf(rowDistances[fromId], size * 2);
+            rowHeadings[fromId] = Arrays.copyOf(rowHeadings[fromId], size * 2);
+        }
+        rowTargets[fromId][size] = toId;
+        rowDistances[fromId][size] = distance;
+        rowHeadings[fromId][size] = (float) heading;
+        rowSizes[fromId] = size + 1;
+    }
+
+    /**
+     * Removes every connection from one airport to another, keeping the order of the
+     * remaining connections.
+     *
+     * @param fromId the id of the origin airport
+     * @param toId   the id of the destination airport
+     */
+    private void removeEdge(int fromId, int toId) {
+        int kept = 0;
+        for (int i = 0; i < rowSizes[fromId]; i++) {
+            if (rowTargets[fromId][i] != toId) {
+                rowTargets[fromId][kept] = rowTargets[fromId][i];
+                rowDistances[fromId][kept] = rowDistances[fromId][i];
+                rowHeadings[fromId][kept] = rowHeadings[fromId][i];
+                kept++;
+            }
+        }
+        rowSizes[fromId] = kept;
+    }
+
+    /**
+     * Copies the rows of the graph into a single set of CSR arrays.
+     *
+     * @return a new CompactGraph
+     */
+    private CompactGraph buildCompactGraph() {
+        int nodeCount = nodes.size();
+        int[] offsets = new int[nodeCount + 1];
+        for (int id = 0; id < nodeCount; id++) {
+            offsets[id + 1] = offsets[id] + rowSizes[id];
+        }
+
+        int edgeCount = offsets[nodeCount];
+        int[] targets = new int[edgeCount];
+        double[] distances = new double[edgeCount];
+        float[] headings = new float[edgeCount];
+        for (int id = 0; id < nodeCount; id++) {
+            if (rowSizes[id] > 0) {
+                System.arraycopy(rowTargets[id], 0, targets, offsets[id], rowSizes[id]);
+                System.arraycopy(rowDistances[id], 0, distances, offsets[id], rowSizes[id]);
+                System.arraycopy(rowHeadings[id], 0, headings, offsets[id], rowSizes[id]);
+            }
+        }
+
+        return new CompactGraph(nodes.toArray(new Airport[0]), new HashMap<>(nodeIds), offsets, targets,
+                distances, headings);
     }
-}
\ No newline at end of file
+}
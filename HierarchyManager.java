@@ -0,0 +1,216 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manages the Contraction Hierarchies of the fleet, one for each distinct performance
+ * profile (range and fuel type) of the airplanes. Ranges longer than any possible leg
+ * share one hierarchy. Hierarchies are built offline, saved to
+ * a directory, and loaded the first time a route is planned for their profile. A hierarchy
+ * whose airports no longer match the current ones is not used until it is built again.
+ * A file that cannot be loaded, for example because it was cut short, is built again
+ * straight away.
+ * <p>
+ * Route searches run on immutable snapshots of the airport graph, so the bounding box and
+ * fingerprint of the airports are worked out once per snapshot, and looking up a loaded
+ * hierarchy takes no lock.
+ */
+public class HierarchyManager {
+    private final File directory;
+    private final ConcurrentHashMap<String, ContractionHierarchy> hierarchies;
+    private volatile GraphSummary lastSummary; // Of the last graph hierarchies were looked up for
+
+    /**
+     * Constructs a HierarchyManager that keeps its hierarchy files in a directory.
+     *
+     * @param directory The directory holding the hierarchy files.
+     */
+    public HierarchyManager(File directory) {
+        this.directory = directory;
+        this.hierarchies = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the hierarchy for an airplane's profile, loading it from disk if needed.
+     *
+     * @param airplane The airplane to plan for.
+     * @param graph The graph holding the current airports.
+     * @return The hierarchy, or null if none has been built for the profile and the current airports.
+     */
+    public ContractionHierarchy getHierarchy(Airplane airplane, RoutingGraph graph) {
+        GraphSummary summary = summarize(graph);
+        double range = Math.min(airplane.getRange(), summary.diagonal);
+        String fuelType = airplane.getRequiredFuelType();
+        String key = profileKey(range, fuelType);
+
+        ContractionHierarchy hierarchy = hierarchies.get(key);
+        if (hierarchy != null && hierarchy.matches(range, fuelType, summary.fingerprint)) {
+            return hierarchy;
+        }
+        return loadHierarchy(key, range, fuelType, summary.fingerprint, graph);
+    }
+
+    /**
+     * Loads the hierarchy of a profile from disk, replacing a loaded one that no longer matches.
+     *
+     * @param key The key of the profile.
+     * @param range The effective range of the profile.
+     * @param fuelType The fuel type of the profile.
+     * @param fingerprint The fingerprint of the current airports.
+     * @param graph The graph holding the current airports.
+     * @return The hierarchy, or null if none has been built for the profile and the current airports.
+     */
+    private synchronized ContractionHierarchy loadHierarchy(String key, double range, String fuelType,
+            long fingerprint, RoutingGraph graph) {
+        ContractionHierarchy hierarchy = hierarchies.get(key);
+        if (hierarchy != null && hierarchy.matches(range, fuelType, fingerprint)) {
+            return hierarchy; // Loaded by another thread in the meantime
+        }
+        hierarchies.remove(key);
+
+        File file = new File(directory, key + ".bin");
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            hierarchy = ContractionHierarchy.load(file, graph);
+        } catch (IOException e) {
+            System.out.println("Could not load contraction hierarchy, building it again: " + e.getMessage());
+            return build(key, range, fuelType, graph);
+        }
+        if (!hierarchy.matches(range, fuelType, fingerprint)) {
+            return null;
+        }
+        hierarchies.put(key, hierarchy);
+        return hierarchy;
+    }
+
+    /**
+     * Builds the hierarchy for an airplane's profile and saves it to disk. Hierarchies
+     * for different profiles can be built at the same time.
+     *
+     * @param airplane The airplane whose profile is used.
+     * @param graph The graph holding the current airports.
+     * @return The new hierarchy.
+     */
+    public ContractionHierarchy buildHierarchy(Airplane airplane, RoutingGraph graph) {
+        double range = Math.min(airplane.getRange(), summarize(graph).diagonal);
+        String fuelType = airplane.getRequiredFuelType();
+        return build(profileKey(range, fuelType), range, fuelType, graph);
+    }
+
+    /**
+     * Builds the hierarchy of a profile and saves it to disk, replacing any file it had.
+     *
+     * @param key The key of the profile.
+     * @param range The effective range of the profile.
+     * @param fuelType The fuel type of the profile.
+     * @param graph The graph holding the current airports.
+     * @return The new hierarchy.
+     */
+    private ContractionHierarchy build(String key, double range, String fuelType, RoutingGraph graph) {
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph, range, fuelType);
+
+        synchronized (this) {
+            hierarchies.put(key, hierarchy);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                System.out.println("Could not create directory " + directory);
+                return hierarchy;
+            }
+            try {
+                hierarchy.save(new File(directory, key + ".bin"));
+            } catch (IOException e) {
+                System.out.println("Could not save contraction hierarchy: " + e.getMessage());
+            }
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Builds one hierarchy for every distinct profile among a list of airplanes.
+     *
+     * @param airplanes The airplanes of the fleet.
+     * @param graph The graph holding the current airports.
+     * @return The number of hierarchies built.
+     */
+    public int buildAll(ArrayList<Airplane> airplanes, RoutingGraph graph) {
+        LinkedHashMap<String, Airplane> profiles = new LinkedHashMap<>();
+        double diagonal = summarize(graph).diagonal;
+        for (Airplane airplane : airplanes) {
+            double range = Math.min(airplane.getRange(), diagonal);
+            profiles.putIfAbsent(profileKey(range, airplane.getRequiredFuelType()), airplane);
+        }
+        // The profiles are independent, so they are built in parallel
+        profiles.values().parallelStream().forEach(airplane -> buildHierarchy(airplane, graph));
+        return profiles.size();
+    }
+
+    /**
+     * Returns the bounding box diagonal and fingerprint of a graph's airports, worked out
+     * only when the graph is not the one of the last call.
+     *
+     * @param graph The graph holding the current airports.
+     * @return The summary of the graph.
+     */
+    private GraphSummary summarize(RoutingGraph graph) {
+        GraphSummary summary = lastSummary;
+        if (summary == null || summary.graph != graph) {
+            summary = new GraphSummary(graph);
+            lastSummary = summary;
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the key of a profile, which is also the name of its hierarchy file.
+     * The range is written out exactly so that two profiles never share a file.
+     *
+     * @param range The range of the profile in knots.
+     * @param fuelType The fuel type of the profile.
+     * @return The key of the profile.
+     */
+    private static String profileKey(double range, String fuelType) {
+        return "ch_" + fuelType + "_" + Long.toHexString(Double.doubleToLongBits(range));
+    }
+
+    /**
+     * Builds the hierarchies for the airplanes and airports in the CSV files, so that the
+     * preprocessing is done once before the Flight Management System is used.
+     *
+     * @param args The directory to write the hierarchies to, "hierarchies" if not given.
+     */
+    public static void main(String[] args) {
+        File directory = new File((args.length > 0) ? args[0] : "hierarchies");
+        AirportManager airportManager = new AirportManager();
+        AirplaneManager airplaneManager = new AirplaneManager();
+        airportManager.setMaxLegDistance(airplaneManager.getMaxRange());
+
+        long start = System.nanoTime();
+        int built = new HierarchyManager(directory).buildAll(airplaneManager.getAirplanes(),
+                airportManager.getGraph().getRoutingGraph());
+        System.out.printf("Built %d contraction hierarchies in %s (%.1f ms)%n", built, directory,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * What the hierarchy lookups need to know about the airports of one graph snapshot.
+     */
+    private static class GraphSummary {
+        private final RoutingGraph graph;
+        private final double diagonal;
+        private final long fingerprint;
+
+        /**
+         * Constructs a GraphSummary by going over the airports of a graph.
+         *
+         * @param graph The graph to summarize.
+         */
+        private GraphSummary(RoutingGraph graph) {
+            this.graph = graph;
+            this.diagonal = ContractionHierarchy.diagonal(graph);
+            this.fingerprint = ContractionHierarchy.fingerprint(graph);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of int ids ordered by a double key, with a position index so
+ * that the key of an id already in the heap can be lowered in place (decrease-key).
+ * Unlike a PriorityQueue whose comparator reads a map that changes underneath it,
+ * every id is in the heap at most once and the heap order always holds.
+ * The heap counts its operations so that searches can report them.
+ */
+public class IndexedMinHeap {
+    private int[] heap; // Ids in heap order
+    private int[] positions; // Position of each id in the heap, -1 when absent
+    private double[] keys; // Key of each id
+    private int size;
+
+    private long inserts;
+    private long decreaseKeys;
+    private long polls;
+
+    /**
+     * Constructs an empty heap for ids from 0 to {@code capacity - 1}.
+     *
+     * @param capacity the number of ids the heap can hold
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Returns whether the heap is empty.
+     *
+     * @return true if no ids are in the heap
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of ids in the heap.
+     *
+     * @return the size of the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether an id is currently in the heap.
+     *
+     * @param id the id to check
+     * @return true if the id is in the heap
+     */
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    /**
+     * Inserts an id with the given key, or lowers its key if it is already in the
+     * heap with a larger one.
+     *
+     * @param id  the id to insert or update
+     * @param key the new key
+     * @return true if the heap changed
+     */
+    public boolean insertOrDecrease(int id, double key) {
+        int position = positions[id];
+        if (position < 0) {
+            keys[id] = key;
+            heap[size] = id;
+            positions[id] = size;
+            siftUp(size++);
+            inserts++;
+            return true;
+        }
+        if (key < keys[id]) {
+            keys[id] = key;
+            siftUp(position);
+            decreaseKeys++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the smallest key in the heap without removing its id.
+     *
+     * @return the smallest key, or infinity if the heap is empty
+     */
+    public double peekKey() {
+        return (size == 0) ? Double.POSITIVE_INFINITY : keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the id with the smallest key.
+     *
+     * @return the id with the smallest key
+     */
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        polls++;
+        return top;
+    }
+
+    /**
+     * Removes every id from the heap. Only the ids still in the heap are touched.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the number of ids inserted since the heap was created or its counts were reset.
+     *
+     * @return the insert count
+     */
+    public long getInsertCount() {
+        return inserts;
+    }
+
+    /**
+     * Returns the number of keys lowered in place since the heap was created or its counts were reset.
+     *
+     * @return the decrease-key count
+     */
+    public long getDecreaseKeyCount() {
+        return decreaseKeys;
+    }
+
+    /**
+     * Returns the number of ids removed with poll since the heap was created or its counts were reset.
+     *
+     * @return the poll count
+     */
+    public long getPollCount() {
+        return polls;
+    }
+
+    /**
+     * Sets the operation counts back to 0, so that a heap reused by several searches
+     * reports the operations of each search separately.
+     */
+    public void resetCounts() {
+        inserts = 0;
+        decreaseKeys = 0;
+        polls = 0;
+    }
+
+    /**
+     * Moves the id at a position up until its parent has a smaller or equal key.
+     *
+     * @param position the position to start from
+     */
+    private void siftUp(int position) {
+        int id = heap[position];
+        double key = keys[id];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentId = heap[parent];
+            if (keys[parentId] <= key) {
+                break;
+            }
+            heap[position] = parentId;
+            positions[parentId] = position;
+            position = parent;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    /**
+     * Moves the id at a position down until both children have larger or equal keys.
+     *
+     * @param position the position to start from
+     */
+    private void siftDown(int position) {
+        int id = heap[position];
+        double key = keys[id];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childId = heap[child];
+            if (key <= keys[childId]) {
+                break;
+            }
+            heap[position] = childId;
+            positions[childId] = position;
+            position = child;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A RoutingGraph that stores no connections at all. The neighbours of an airport
+ * are generated from a SpatialGrid when a route search expands it, and only their
+ * distances are calculated; headings are left to the Edge objects of the final route.
+ * Rows can optionally be memoized so that airports expanded by many searches are
+ * only generated once.
+ */
+public class LazyGraph implements RoutingGraph {
+    private final Airport[] airports;
+    private final HashMap<String, Integer> airportIds;
+    private final int[] fuelMasks;
+    private final double maxLegDistance;
+    private final SpatialGrid grid;
+    private final AtomicReferenceArray<MemoRow> memoRows; // null when memoization is off
+
+    /**
+     * Constructs a LazyGraph over the given airports.
+     *
+     * @param airports       the airports indexed by id, null for ids that are not in use
+     * @param airportIds     a map from ICAO identifier to airport id
+     * @param maxLegDistance the longest connection to generate in knots, or infinity for a full mesh
+     * @param memoize        whether generated rows are kept for later searches
+     */
+    public LazyGraph(Airport[] airports, HashMap<String, Integer> airportIds, double maxLegDistance,
+            boolean memoize) {
+        this.airports = airports;
+        this.airportIds = airportIds;
+        this.fuelMasks = FuelType.masksOf(airports);
+        this.maxLegDistance = maxLegDistance;
+        this.grid = new SpatialGrid(maxLegDistance);
+        this.memoRows = memoize ? new AtomicReferenceArray<>(airports.length) : null;
+        for (int id = 0; id < airports.length; id++) {
+            if (airports[id] != null) {
+                grid.add(id, airports[id].getLatitude(), airports[id].getLongitude());
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return airports.length;
+    }
+
+    @Override
+    public Airport getAirport(int id) {
+        return airports[id];
+    }
+
+    @Override
+    public int getId(String identifier) {
+        Integer id = airportIds.get(identifier);
+        return (id == null) ? -1 : id;
+    }
+
+    @Override
+    public int getFuelMask(int id) {
+        return fuelMasks[id];
+    }
+
+    @Override
+    public void loadNeighbours(int id, NeighbourRow row) {
+        MemoRow memoRow = (memoRows == null) ? null : memoRows.get(id);
+        if (memoRow != null) {
+            row.share(memoRow.targets, memoRow.distances, 0, memoRow.targets.length);
+            return;
+        }
+
+        Airport origin = airports[id];
+        int[] candidates = grid.getCandidates(origin.getLatitude(), origin.getLongitude());
+        Airport[] candidateAirports = new Airport[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            candidateAirports[i] = airports[candidates[i]];
+        }
+        double[] distances = new double[candidates.length];
+        DistanceKernel.distances(origin, candidateAirports, candidates.length, distances);
+
+        row.clear();
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i] != id && distances[i] <= maxLegDistance) {
+                row.add(candidates[i], distances[i]);
+            }
+        }
+
+        if (memoRows != null) {
+            memoRows.set(id, new MemoRow(Arrays.copyOf(row.targets, row.end), Arrays.copyOf(row.distances, row.end)));
+        }
+    }
+
+    @Override
+    public void loadReverseNeighbours(int id, NeighbourRow row) {
+        loadNeighbours(id, row); // Generated connections always go both ways
+    }
+
+    /**
+     * The generated connections of one airport, kept when memoization is on.
+     */
+    private static class MemoRow {
+        private final int[] targets;
+        private final double[] distances;
+
+        private MemoRow(int[] targets, double[] distances) {
+            this.targets = targets;
+            this.distances = distances;
+        }
+    }
+}
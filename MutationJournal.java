@@ -0,0 +1,607 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * An append-only journal of the changes made to the list kept in a CSV file, so that a
+ * single add, edit or delete costs one short line instead of rewriting the whole file.
+ * The journal sits next to the CSV file, with ".journal" added to the name. Its first line
+ * records the size and modification time of the CSV file it applies to and the next key
+ * the owner of the list will give out. Each further line is one change: the operation,
+ * the key of the item it applies to, and for adds and edits the new item as written by
+ * toCSV. Loading replays the changes on top of the CSV file (or its snapshot).
+ * <p>
+ * Once the journal grows past a threshold it is compacted: the whole list is written to a
+ * temporary file on a background thread and handed to replaceBase. That writes the changes
+ * made since the list was copied to a new journal, with ".next" added to the name, whose
+ * first line already matches the temporary file, then moves the temporary file over the
+ * CSV file and the new journal over the old one. Should the program stop between the two
+ * moves, read finds that the journal no longer matches the CSV file but the new one does,
+ * so no recorded change is lost. Any other journal whose first line does not match the CSV
+ * file belongs to another state of the file and is discarded.
+ * <p>
+ * In write-behind mode a change is only queued in memory, and the background thread
+ * writes the queued changes with one append per interval, or as soon as a batch is full.
+ * flush writes them at once; awaitWrites, which the managers call before loading and
+ * which also runs when the program shuts down, flushes every journal. Changes still
+ * queued when the program is killed are lost. Whole files are always written to a
+ * temporary file first and moved into place in one atomic step.
+ *
+ * @param <T> the type of the items of the list
+ */
+public class MutationJournal<T> {
+
+    /**
+     * The kinds of change a journal records.
+     */
+    public enum Operation {
+        ADD("A"),
+        EDIT("E"),
+        DELETE("D");
+
+        private final String code;
+
+        /**
+         * Constructs an operation.
+         *
+         * @param code the code the operation is written as
+         */
+        Operation(String code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the operation written as a code.
+         *
+         * @param code the code
+         * @return the operation, or null if the code is unknown
+         */
+        private static Operation fromCode(String code) {
+            for (Operation operation : values()) {
+                if (operation.code.equals(code)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final String HEADER = "#journal";
+
+    // A journal longer than this is compacted into its CSV file
+    private static final long COMPACTION_THRESHOLD = 64 * 1024;
+
+    // Queued changes are written after this long, or at once when this many are queued
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    private static final int FLUSH_BATCH_SIZE = 256;
+
+    // One thread for all journals, so flushes and compactions run in the order they were started
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The journals in write-behind mode, held weakly; a journal with queued changes is
+    // also held by its scheduled flush
+    private static final Set<MutationJournal<?>> WRITE_BEHIND_JOURNALS =
+            Collections.newSetFromMap(new WeakHashMap<>());
+    private static boolean shutdownHookAdded;
+
+    private final File csvFile;
+    private final File file;
+    private final File nextFile; // The journal of a CSV file that is about to replace the current one
+    private final Function<CsvRow, T> parser;
+    private final Function<T, String> formatter;
+    private final ArrayList<String> lines = new ArrayList<>();
+    private long length;
+    private long dropped; // The number of changes since read that are now part of the CSV file
+    private int compactions; // The number of compactions started and not yet finished
+    private long nextKey;
+    private boolean writeBehind;
+    private int pending; // The number of lines at the end of lines not yet in the file
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Constructs the journal of a CSV file. Nothing is read until read is called.
+     *
+     * @param csvFile   the CSV file the journal applies to
+     * @param parser    creates an item from a row in the format of the CSV file
+     * @param formatter writes an item as a row of the CSV file
+     */
+    public MutationJournal(File csvFile, Function<CsvRow, T> parser, Function<T, String> formatter) {
+        this.csvFile = csvFile;
+        this.file = new File(csvFile.getPath() + ".journal");
+        this.nextFile = new File(file.getPath() + ".next");
+        this.parser = parser;
+        this.formatter = formatter;
+    }
+
+    /**
+     * Reads the changes recorded since the CSV file was last written. A journal that
+     * belongs to another state of the CSV file is discarded, and a last line that was
+     * only partly written is dropped. If a compaction replaced the CSV file but stopped
+     * before replacing the journal, the journal it had written for the new file is read.
+     *
+     * @return the changes in the order they were made
+     */
+    public synchronized ArrayList<Record<T>> read() {
+        ArrayList<Record<T>> records = new ArrayList<>();
+        lines.clear();
+        length = 0;
+        pending = 0;
+        dropped = 0;
+        nextKey = 0;
+        if (!file.isFile() && !nextFile.isFile()) {
+            return records;
+        }
+        try {
+            File source = file;
+            long recordedNextKey = matchHeader(file, csvFile);
+            if (recordedNextKey < 0) {
+                source = nextFile;
+                recordedNextKey = matchHeader(nextFile, csvFile);
+            }
+            if (recordedNextKey >= 0) {
+                nextKey = recordedNextKey;
+                records = CsvParser.parse(source, this::parseRecord);
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading journal: " + e.getMessage());
+        }
+        for (Record<T> record : records) {
+            lines.add(format(record.getOperation(), record.getKey(), record.getItem()));
+        }
+        // Rewritten so that a discarded journal or a partly written line is not appended to
+        try {
+            rewrite();
+            Files.deleteIfExists(nextFile.toPath());
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+        }
+        return records;
+    }
+
+    /**
+     * Records a change at the end of the journal.
+     *
+     * @param operation the kind of change
+     * @param key       the key of the item the change applies to, without commas; for an
+     *                  edit, the key of the item before the change
+     * @param item      the new item, or null for a delete
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void append(Operation operation, String key, T item) throws IOException {
+        String line = format(operation, key, item);
+        lines.add(line);
+        length += line.length() + System.lineSeparator().length();
+        pending++;
+        if (!writeBehind) {
+            writePending();
+        } else if (pending >= FLUSH_BATCH_SIZE) {
+            scheduledFlush = WRITER.schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = WRITER.schedule(this::flush, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sets whether changes are queued and written by the background thread instead of
+     * being written before append returns. Turning write-behind off flushes the queue.
+     *
+     * @param newWriteBehind true to queue changes
+     */
+    public synchronized void setWriteBehind(boolean newWriteBehind) {
+        writeBehind = newWriteBehind;
+        synchronized (WRITE_BEHIND_JOURNALS) {
+            if (writeBehind) {
+                WRITE_BEHIND_JOURNALS.add(this);
+                if (!shutdownHookAdded) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(MutationJournal::awaitWrites, "journal-shutdown"));
+                    shutdownHookAdded = true;
+                }
+            } else {
+                WRITE_BEHIND_JOURNALS.remove(this);
+            }
+        }
+        if (!writeBehind) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes every queued change to the journal file with one append. If the file cannot
+     * be written the changes stay queued for the next flush.
+     */
+    public synchronized void flush() {
+        scheduledFlush = null;
+        try {
+            writePending();
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the lines that are not yet in the journal file, or writes the whole journal
+     * if the file is missing.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void writePending() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        if (!file.isFile()) {
+            rewrite();
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+            for (String line : lines.subList(lines.size() - pending, lines.size())) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        pending = 0;
+    }
+
+    /**
+     * Returns the next key recorded in the journal that read found, or 0 if it recorded none.
+     *
+     * @return the next key
+     */
+    public synchronized long getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * Sets the key the owner of the list will give the next new item. The key is kept in
+     * the first line of the journal, so keys stay used after a compaction drops the
+     * records of the items that had them.
+     *
+     * @param newNextKey the next key
+     */
+    public synchronized void setNextKey(long newNextKey) {
+        nextKey = newNextKey;
+    }
+
+    /**
+     * Returns whether the journal has grown past the threshold and no compaction is running.
+     *
+     * @return true if the journal should be compacted
+     */
+    public synchronized boolean needsCompaction() {
+        return compactions == 0 && length >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Returns a mark for the changes recorded so far. A copy of the list taken together
+     * with the mark includes exactly these changes, and is passed to replaceBase with it.
+     *
+     * @return the mark
+     */
+    public synchronized long mark() {
+        return dropped + lines.size();
+    }
+
+    /**
+     * Writes the whole list to the CSV file on the background thread. Whole-file writes all
+     * run on that thread, one after another, so they never share a temporary file.
+     *
+     * @param writeBase writes a copy of the list, taken together with a mark, to a temporary
+     *                  file, hands it to replaceBase, and returns whether that succeeded
+     */
+    public synchronized void compact(BooleanSupplier writeBase) {
+        compactions++;
+        WRITER.execute(() -> {
+            try {
+                writeBase.getAsBoolean();
+            } finally {
+                finishCompaction();
+            }
+        });
+    }
+
+    /**
+     * Records that a compaction has finished, whether or not it wrote the CSV file.
+     */
+    private synchronized void finishCompaction() {
+        compactions--;
+    }
+
+    /**
+     * Replaces the CSV file with a completely written temporary file holding a copy of
+     * the list, and starts the journal again for it, keeping the changes made after the
+     * copy was taken. The journal for the new file is written before the CSV file is
+     * replaced, so that either the old pair of files or the new one is always complete. If
+     * the new journal cannot be written, the CSV file and the old journal are left as they are.
+     *
+     * @param tempFile the new contents of the CSV file
+     * @param mark     the mark taken together with the copy of the list
+     * @return true if the CSV file was replaced, false if a newer copy already replaced it
+     * @throws IOException if the new journal cannot be written or the CSV file cannot be replaced
+     */
+    public synchronized boolean replaceBase(File tempFile, long mark) throws IOException {
+        if (mark < dropped) {
+            Files.deleteIfExists(tempFile.toPath());
+            return false;
+        }
+        int compactedLines = (int) (mark - dropped);
+        ArrayList<String> kept = new ArrayList<>(lines.subList(compactedLines, lines.size()));
+        long nextLength;
+        try {
+            nextLength = writeLines(nextFile, header(tempFile), kept);
+        } catch (IOException e) {
+            // Without the new journal on disk the old pair of files has to stay as it is
+            Files.deleteIfExists(nextFile.toPath());
+            Files.deleteIfExists(tempFile.toPath());
+            throw e;
+        }
+        // Renaming keeps the size and modification time, so the new journal matches from here
+        moveIntoPlace(tempFile, csvFile);
+        lines.subList(0, compactedLines).clear();
+        dropped = mark;
+        try {
+            moveIntoPlace(nextFile, file);
+            length = nextLength;
+            pending = 0;
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+            // The new journal is complete under its temporary name, where read looks as well, so
+            // the old one can go. It is written again under its own name now or with the next change.
+            length = 0;
+            pending = lines.size();
+            try {
+                Files.deleteIfExists(file.toPath());
+                rewrite();
+            } catch (IOException rewriteError) {
+                System.out.println("Error writing journal: " + rewriteError.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued changes of every journal in write-behind mode and waits until
+     * every compaction started so far has finished, so that the files are not read while
+     * changes are missing or left behind half written.
+     */
+    public static void awaitWrites() {
+        ArrayList<MutationJournal<?>> journals;
+        synchronized (WRITE_BEHIND_JOURNALS) {
+            journals = new ArrayList<>(WRITE_BEHIND_JOURNALS);
+        }
+        for (MutationJournal<?> journal : journals) {
+            journal.flush();
+        }
+        try {
+            WRITER.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Error compacting journal: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Writes the journal file again: the header for the current CSV file and the lines
+     * kept in memory.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void rewrite() throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        length = writeLines(tempFile, header(csvFile), lines);
+        moveIntoPlace(tempFile, file);
+        pending = 0;
+    }
+
+    /**
+     * Writes a header and lines to a file, replacing what it held.
+     *
+     * @param target  the file to write
+     * @param header  the first line
+     * @param toWrite the changes
+     * @return the number of characters written
+     * @throws IOException if the file cannot be written
+     */
+    private static long writeLines(File target, String header, ArrayList<String> toWrite) throws IOException {
+        long written = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(target))) {
+            writer.write(header);
+            writer.newLine();
+            written += header.length() + System.lineSeparator().length();
+            for (String line : toWrite) {
+                writer.write(line);
+                writer.newLine();
+                written += line.length() + System.lineSeparator().length();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Replaces a file with a completely written temporary file in one step, so that the
+     * file is never seen half written. The move is atomic where the file system allows it.
+     *
+     * @param tempFile the new contents of the file
+     * @param target   the file to replace
+     * @throws IOException if the file cannot be replaced
+     */
+    static void moveIntoPlace(File tempFile, File target) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the first line of a journal file.
+     *
+     * @param journalFile the journal file
+     * @return the line, or an empty string if the file is empty or missing
+     * @throws IOException if the file cannot be read
+     */
+    private static String readHeader(File journalFile) throws IOException {
+        if (!journalFile.isFile()) {
+            return "";
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line = reader.readLine();
+            return (line == null) ? "" : line;
+        }
+    }
+
+    /**
+     * Returns the header line for the current state of a CSV file and the next key.
+     *
+     * @param csv the CSV file, or a temporary file that is about to replace it
+     * @return the header line
+     */
+    private String header(File csv) {
+        return stateOf(csv) + "," + nextKey;
+    }
+
+    /**
+     * Returns the part of the header line that identifies the state of a CSV file.
+     *
+     * @param csv the CSV file
+     * @return the header without the next key
+     */
+    private static String stateOf(File csv) {
+        return HEADER + "," + csv.length() + "," + DatabaseSnapshot.modificationTime(csv);
+    }
+
+    /**
+     * Checks whether a journal file was written for the current state of a CSV file.
+     *
+     * @param journalFile the journal file
+     * @param csv         the CSV file
+     * @return the next key recorded in the header, 0 for a header that records none, or -1
+     *         if the journal belongs to another state of the file
+     * @throws IOException if the journal cannot be read
+     */
+    private static long matchHeader(File journalFile, File csv) throws IOException {
+        String state = stateOf(csv);
+        String header = readHeader(journalFile);
+        if (header.equals(state)) {
+            return 0; // Written before the next key was kept
+        }
+        if (!header.startsWith(state + ",")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.substring(state.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes a change as a line of the journal.
+     *
+     * @param operation the kind of change
+     * @param key       the key of the item the change applies to
+     * @param item      the new item, or null for a delete
+     * @return the line
+     */
+    private String format(Operation operation, String key, T item) {
+        String line = operation.code + "," + key;
+        return (item == null) ? line : line + "," + formatter.apply(item);
+    }
+
+    /**
+     * Reads a change from a line of the journal.
+     *
+     * @param row the line
+     * @return the change, or null for the header and for lines that are not complete changes
+     */
+    private Record<T> parseRecord(CsvRow row) {
+        Operation operation = Operation.fromCode(row.getString(0));
+        if (operation == null) {
+            return null;
+        }
+        try {
+            String key = row.getString(1);
+            if (operation == Operation.DELETE) {
+                return new Record<>(operation, key, null);
+            }
+            row.dropFields(2);
+            T item = parser.apply(row);
+            return (item == null) ? null : new Record<>(operation, key, item);
+        } catch (RuntimeException e) {
+            return null; // A line cut short when the program stopped while writing it
+        }
+    }
+
+    /**
+     * One change read from a journal.
+     *
+     * @param <T> the type of the items of the list
+     */
+    public static class Record<T> {
+        private final Operation operation;
+        private final String key;
+        private final T item;
+
+        /**
+         * Constructs a change.
+         *
+         * @param operation the kind of change
+         * @param key       the key of the item the change applies to
+         * @param item      the new item, or null for a delete
+         */
+        private Record(Operation operation, String key, T item) {
+            this.operation = operation;
+            this.key = key;
+            this.item = item;
+        }
+
+        /**
+         * Returns the kind of change.
+         *
+         * @return the operation
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns the key of the item the change applies to; for an edit, the key of the
+         * item before the change.
+         *
+         * @return the key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the new item.
+         *
+         * @return the item, or null for a delete
+         */
+        public T getItem() {
+            return item;
+        }
+    }
+}
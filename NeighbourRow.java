@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * Holds the outgoing connections of one airport while a route search looks at them.
+ * The connection at position {@code i}, for {@code start <= i < end}, leads to airport
+ * {@code targets[i]} over {@code distances[i]} knots. The arrays may belong to the graph
+ * itself, so they must not be modified. A search keeps one row and reuses it for every
+ * airport it expands.
+ */
+public class NeighbourRow {
+    int[] targets;
+    double[] distances;
+    int start;
+    int end;
+
+    private int[] ownTargets = new int[16];
+    private double[] ownDistances = new double[16];
+
+    /**
+     * Points the row at a range of arrays owned by the graph.
+     *
+     * @param targets   the destination airport ids
+     * @param distances the distances in knots
+     * @param start     the first position of the row
+     * @param end       the position after the last one of the row
+     */
+    void share(int[] targets, double[] distances, int start, int end) {
+        this.targets = targets;
+        this.distances = distances;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Empties the row so that connections can be added to it one at a time.
+     */
+    void clear() {
+        targets = ownTargets;
+        distances = ownDistances;
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * Appends a connection to a row that was emptied with clear.
+     *
+     * @param target   the destination airport id
+     * @param distance the distance in knots
+     */
+    void add(int target, double distance) {
+        if (end == ownTargets.length) {
+            ownTargets = Arrays.copyOf(ownTargets, end * 2);
+            ownDistances = Arrays.copyOf(ownDistances, end * 2);
+            targets = ownTargets;
+            distances = ownDistances;
+        }
+        ownTargets[end] = target;
+        ownDistances[end] = distance;
+        end++;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Objects;
+
+/**
+ * The performance figures of an airplane that decide which routes it can fly: tank size,
+ * fuel burn rate, airspeed and type (which decides the fuel it needs). Two airplanes with
+ * the same profile always get the same routes, so the profile can key cached results.
+ */
+public class PerformanceProfile {
+    private final double tankSize;
+    private final double fuelBurnRate;
+    private final double airspeed;
+    private final int type;
+
+    /**
+     * Constructs the profile of an airplane.
+     *
+     * @param airplane The airplane whose performance figures are used.
+     */
+    public PerformanceProfile(Airplane airplane) {
+        this.tankSize = airplane.getTankSize();
+        this.fuelBurnRate = airplane.getFuelBurnRate();
+        this.airspeed = airplane.getAirspeed();
+        this.type = airplane.getType();
+    }
+
+    /**
+     * Returns the tank size of the profile.
+     *
+     * @return The tank size in gallons.
+     */
+    public double getTankSize() {
+        return tankSize;
+    }
+
+    /**
+     * Returns the fuel burn rate of the profile.
+     *
+     * @return The fuel burn rate in gallons per hour.
+     */
+    public double getFuelBurnRate() {
+        return fuelBurnRate;
+    }
+
+    /**
+     * Returns the airspeed of the profile.
+     *
+     * @return The airspeed in knots.
+     */
+    public double getAirspeed() {
+        return airspeed;
+    }
+
+    /**
+     * Returns the airplane type of the profile.
+     *
+     * @return The type of airplane.
+     */
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PerformanceProfile)) {
+            return false;
+        }
+        PerformanceProfile profile = (PerformanceProfile) other;
+        return Double.compare(tankSize, profile.tankSize) == 0
+                && Double.compare(fuelBurnRate, profile.fuelBurnRate) == 0
+                && Double.compare(airspeed, profile.airspeed) == 0
+                && type == profile.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tankSize, fuelBurnRate, airspeed, type);
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of computed routes, keyed by origin ICAO, destination ICAO and the
+ * airplane's performance profile. The least recently used route is evicted when the
+ * cache is full. Routes that were not possible are cached too, as empty lists.
+ * <p>
+ * The cache listens to the airport and airplane managers and only drops the routes a
+ * change can affect:
+ * <ul>
+ * <li>Deleting an airport drops the routes that start at, end at or pass through it.</li>
+ * <li>Adding an airport drops the routes it could shorten, that is those longer than the
+ * straight-line distance from the origin to the new airport and on to the destination,
+ * and the routes that were not possible.</li>
+ * <li>Editing an airport counts as deleting the old airport and adding the new one.</li>
+ * <li>Deleting an airplane, or editing its performance, drops the routes of its old
+ * profile, as no airplane may have that profile any more. Other airplanes with the same
+ * profile find their routes again with one search.</li>
+ * </ul>
+ * All methods are synchronized, so the cache can be shared by searches on several threads.
+ */
+public class RouteCache implements AirportListener, AirplaneListener {
+    private final LinkedHashMap<RouteKey, CachedRoute> routes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity The largest number of routes the cache holds.
+     */
+    public RouteCache(int capacity) {
+        // Access order makes iteration run from least to most recently used
+        this.routes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RouteKey, CachedRoute> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached route between two airports for an airplane.
+     *
+     * @param origin The starting airport.
+     * @param destination The destination airport.
+     * @param airplane The airplane used for the flight.
+     * @return A copy of the cached route, empty if the route was not possible, or null if
+     *         the route is not in the cache.
+     */
+    public synchronized ArrayList<Edge> get(Airport origin, Airport destination, Airplane airplane) {
+        CachedRoute cached = routes.get(new RouteKey(origin, destination, airplane));
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(cached.legs);
+    }
+
+    /**
+     * Stores the route between two airports for an airplane.
+     *
+     * @param origin The starting airport.
+     * @param destination The destination airport.
+     * @param airplane The airplane used for the flight.
+     * @param route The legs of the route, or an empty list if the route is not possible.
+     */
+    public synchronized void put(Airport origin, Airport destination, Airplane airplane, ArrayList<Edge> route) {
+        routes.put(new RouteKey(origin, destination, airplane), new CachedRoute(origin, destination, route));
+    }
+
+    /**
+     * Removes every route from the cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        routes.clear();
+    }
+
+    /**
+     * Returns the number of routes in the cache.
+     *
+     * @return The number of cached routes.
+     */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached route.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached route.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void airportAdded(Airport airport) {
+        Iterator<CachedRoute> iterator = routes.values().iterator();
+        while (iterator.hasNext()) {
+            CachedRoute cached = iterator.next();
+            // No route through the new airport is shorter than the straight line through it
+            double bound = Edge.distanceBetween(cached.origin, airport)
+                    + Edge.distanceBetween(airport, cached.destination);
+            if (cached.legs.isEmpty() || bound < cached.distance) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void airportDeleted(Airport airport) {
+        String identifier = airport.getIdentifier();
+        routes.values().removeIf(cached -> cached.visits(identifier));
+    }
+
+    @Override
+    public void airplaneAdded(Airplane airplane) {
+        // Routes depend only on the profile, so a new airplane makes no cached route wrong
+    }
+
+    @Override
+    public synchronized void airplaneDeleted(Airplane airplane) {
+        PerformanceProfile profile = new PerformanceProfile(airplane);
+        routes.keySet().removeIf(key -> key.profile.equals(profile));
+    }
+
+    @Override
+    public synchronized void airplaneEdited(Airplane oldAirplane, Airplane newAirplane) {
+        if (!new PerformanceProfile(oldAirplane).equals(new PerformanceProfile(newAirplane))) {
+            airplaneDeleted(oldAirplane);
+        }
+    }
+
+    /**
+     * The key of a cached route.
+     */
+    private static class RouteKey {
+        private final String originIdentifier;
+        private final String destinationIdentifier;
+        private final PerformanceProfile profile;
+
+        /**
+         * Constructs the key of a route.
+         *
+         * @param origin The starting airport.
+         * @param destination The destination airport.
+         * @param airplane The airplane used for the flight.
+         */
+        private RouteKey(Airport origin, Airport destination, Airplane airplane) {
+            this.originIdentifier = origin.getIdentifier();
+            this.destinationIdentifier = destination.getIdentifier();
+            this.profile = new PerformanceProfile(airplane);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof RouteKey)) {
+                return false;
+            }
+            RouteKey key = (RouteKey) other;
+            return originIdentifier.equals(key.originIdentifier)
+                    && destinationIdentifier.equals(key.destinationIdentifier)
+                    && profile.equals(key.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(originIdentifier, destinationIdentifier, profile);
+        }
+    }
+
+    /**
+     * A cached route together with what is needed to decide whether a change affects it.
+     */
+    private static class CachedRoute {
+        private final Airport origin;
+        private final Airport destination;
+        private final ArrayList<Edge> legs;
+        private final double distance;
+
+        /**
+         * Constructs a cached route.
+         *
+         * @param origin The starting airport.
+         * @param destination The destination airport.
+         * @param legs The legs of the route, empty if the route is not possible.
+         */
+        private CachedRoute(Airport origin, Airport destination, ArrayList<Edge> legs) {
+            this.origin = origin;
+            this.destination = destination;
+            this.legs = new ArrayList<>(legs);
+            double total = 0;
+            for (Edge leg : legs) {
+                total += leg.getDistance();
+            }
+            this.distance = total;
+        }
+
+        /**
+         * Returns whether the route starts at, ends at or passes through an airport.
+         * Airports are compared by identifier, because the managers reload airports
+         * from their files as new objects.
+         *
+         * @param identifier The ICAO identifier of the airport.
+         * @return true if the route uses the airport.
+         */
+        private boolean visits(String identifier) {
+            if (origin.getIdentifier().equals(identifier) || destination.getIdentifier().equals(identifier)) {
+                return true;
+            }
+            for (Edge leg : legs) {
+                if (leg.getDestinationNode().getIdentifier().equals(identifier)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
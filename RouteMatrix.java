@@ -0,0 +1,51 @@
+/**
+ * The routes from a list of origin airports to a list of destination airports for one
+ * airplane, stored as primitive tables. Entry {@code [i][j]} describes the route from
+ * origin {@code i} to destination {@code j}; unreachable pairs have an infinite distance
+ * and time and a stop count of -1.
+ */
+public class RouteMatrix {
+    private final double[][] distances;
+    private final double[][] times;
+    private final int[][] stops;
+
+    /**
+     * Constructs a RouteMatrix from already filled tables.
+     *
+     * @param distances the route distances in nautical miles
+     * @param times     the flight times in hours
+     * @param stops     the number of intermediate airports of each route
+     */
+    RouteMatrix(double[][] distances, double[][] times, int[][] stops) {
+        this.distances = distances;
+        this.times = times;
+        this.stops = stops;
+    }
+
+    /**
+     * Returns the distance of every route.
+     *
+     * @return the distances in nautical miles, indexed by origin and then destination
+     */
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Returns the flight time of every route, not counting time spent refuelling.
+     *
+     * @return the times in hours, indexed by origin and then destination
+     */
+    public double[][] getTimes() {
+        return times;
+    }
+
+    /**
+     * Returns the number of intermediate airports of every route.
+     *
+     * @return the stop counts, indexed by origin and then destination
+     */
+    public int[][] getStops() {
+        return stops;
+    }
+}
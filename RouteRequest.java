@@ -0,0 +1,49 @@
+/**
+ * A request to find the route between two airports for an airplane, as passed to
+ * Flight.planBatch.
+ */
+public class RouteRequest {
+    private final Airport origin;
+    private final Airport destination;
+    private final Airplane airplane;
+
+    /**
+     * Constructs a route request.
+     *
+     * @param origin The starting airport.
+     * @param destination The destination airport.
+     * @param airplane The airplane used for the flight.
+     */
+    public RouteRequest(Airport origin, Airport destination, Airplane airplane) {
+        this.origin = origin;
+        this.destination = destination;
+        this.airplane = airplane;
+    }
+
+    /**
+     * Returns the starting airport of the request.
+     *
+     * @return The origin airport.
+     */
+    public Airport getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Returns the destination airport of the request.
+     *
+     * @return The destination airport.
+     */
+    public Airport getDestination() {
+        return destination;
+    }
+
+    /**
+     * Returns the airplane of the request.
+     *
+     * @return The airplane used for the flight.
+     */
+    public Airplane getAirplane() {
+        return airplane;
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+
+/**
+ * The outcome of one RouteRequest in a batch: the route found, or the reason there is
+ * none, together with the time spent on the request.
+ */
+public class RouteResult {
+    /** The failure reason when the origin and the destination are the same airport. */
+    public static final String SAME_AIRPORTS = "Origin and destination are the same";
+    /** The failure reason when the airplane's airspeed is not greater than 0. */
+    public static final String NO_AIRSPEED = "Airspeed is not greater than 0";
+    /** The failure reason when the airplane's tank size is not greater than 0. */
+    public static final String NO_TANK = "Tank Size is not greater than 0";
+    /** The failure reason when the origin or the destination is not in the graph. */
+    public static final String NOT_IN_GRAPH = "Airport is not in the graph";
+    /** The failure reason when the search found no route within the fuel rules. */
+    public static final String NO_ROUTE = "No route found";
+
+    private final RouteRequest request;
+    private final ArrayList<Edge> route;
+    private final String failureReason;
+    private final boolean cached;
+    private final SearchStatistics statistics;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs the result of a route request.
+     *
+     * @param request The request that was answered.
+     * @param route The legs of the route, empty if the route is not possible.
+     * @param failureReason Why there is no route, or null if a route was found.
+     * @param cached Whether the route came from the route cache.
+     * @param statistics The statistics of the search.
+     * @param elapsedNanos The time spent answering the request in nanoseconds.
+     */
+    RouteResult(RouteRequest request, ArrayList<Edge> route, String failureReason, boolean cached,
+            SearchStatistics statistics, long elapsedNanos) {
+        this.request = request;
+        this.route = route;
+        this.failureReason = failureReason;
+        this.cached = cached;
+        this.statistics = statistics;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the request this is the result of.
+     *
+     * @return The route request.
+     */
+    public RouteRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns the legs of the route.
+     *
+     * @return A copy of the legs, empty if the route is not possible.
+     */
+    public ArrayList<Edge> getRoute() {
+        return new ArrayList<>(route);
+    }
+
+    /**
+     * Returns whether a route was found.
+     *
+     * @return true if the route is possible.
+     */
+    public boolean isPossible() {
+        return failureReason == null;
+    }
+
+    /**
+     * Returns why no route was found.
+     *
+     * @return The reason, one of the failure reason constants, or null if a route was found.
+     */
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * Returns whether the request was turned down before any search, because the airports
+     * are the same or the airplane can not fly at all.
+     *
+     * @return true if no search was run for the request.
+     */
+    public boolean isRejected() {
+        return SAME_AIRPORTS.equals(failureReason) || NO_AIRSPEED.equals(failureReason)
+                || NO_TANK.equals(failureReason);
+    }
+
+    /**
+     * Returns the total distance of the route.
+     *
+     * @return The distance in nautical miles, or infinity if the route is not possible.
+     */
+    public double getDistance() {
+        if (!isPossible()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double distance = 0;
+        for (Edge leg : route) {
+            distance += leg.getDistance();
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the flight time of the route, not counting time spent refuelling.
+     *
+     * @return The time in hours, or infinity if the route is not possible.
+     */
+    public double getFlightTime() {
+        return getDistance() / request.getAirplane().getAirspeed();
+    }
+
+    /**
+     * Returns whether the route came from the route cache rather than a search.
+     *
+     * @return true if no search was run.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Returns the statistics of the search. They are empty if no search was run.
+     *
+     * @return The search statistics.
+     */
+    public SearchStatistics getSearchStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the time spent answering the request, not counting time spent waiting for a
+     * free slot in the batch.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
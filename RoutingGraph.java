@@ -0,0 +1,68 @@
+/**
+ * A read-only view of the airport graph that route searches run on.
+ * Airports are referred to by int ids between 0 and {@code size() - 1}, and the
+ * connections of an airport are read into a NeighbourRow, so a search never
+ * has to deal with Edge objects.
+ */
+public interface RoutingGraph {
+
+    /**
+     * Returns the number of airport ids in the graph, including ids that are not in use.
+     *
+     * @return the size of the id range
+     */
+    int size();
+
+    /**
+     * Returns the airport with the given id.
+     *
+     * @param id the airport id
+     * @return the Airport, or null if the id is not in use
+     */
+    Airport getAirport(int id);
+
+    /**
+     * Returns the id of the airport with the given ICAO identifier.
+     *
+     * @param identifier the ICAO identifier of the airport
+     * @return the airport id, or -1 if no airport in the graph has the identifier
+     */
+    int getId(String identifier);
+
+    /**
+     * Returns the id of the given airport, looked up by its ICAO identifier, so the
+     * airport does not have to be the instance held by the graph.
+     *
+     * @param airport the airport to look up
+     * @return the airport id, or -1 if the airport is not in the graph
+     */
+    default int getId(Airport airport) {
+        return getId(airport.getIdentifier());
+    }
+
+    /**
+     * Returns the fuel types sold at an airport as a fuel mask (see FuelType).
+     *
+     * @param id the airport id
+     * @return the fuel mask of the airport, 0 if the id is not in use
+     */
+    int getFuelMask(int id);
+
+    /**
+     * Loads the outgoing connections of an airport into a row, replacing what the
+     * row held before.
+     *
+     * @param id  the id of the airport
+     * @param row the row to fill
+     */
+    void loadNeighbours(int id, NeighbourRow row);
+
+    /**
+     * Loads the incoming connections of an airport into a row, replacing what the row
+     * held before. The row's targets are the airports the connections start from.
+     *
+     * @param id  the id of the airport
+     * @param row the row to fill
+     */
+    void loadReverseNeighbours(int id, NeighbourRow row);
+}
@@ -0,0 +1,19 @@
+/**
+ * The search algorithms Flight can use to find a route between two airports.
+ */
+public enum RoutingMode {
+    /** Dijkstra's shortest path algorithm, expanding airports in every direction. */
+    DIJKSTRA,
+    /** A* search, guided towards the destination by the straight-line distance to it. */
+    A_STAR,
+    /** Dijkstra's algorithm run forward from the origin and backward from the destination at once. */
+    BIDIRECTIONAL,
+    /** A* run forward from the origin and backward from the destination at once. */
+    BIDIRECTIONAL_A_STAR,
+    /**
+     * A query on the prebuilt Contraction Hierarchy of the airplane's profile, falling back to
+     * Dijkstra when it has no route. The route may be longer than Dijkstra's when the shortest
+     * one passes two airports in a row that do not sell the airplane's fuel.
+     */
+    CONTRACTION_HIERARCHY
+}
@@ -0,0 +1,158 @@
+/**
+ * Counts the work done by a single route search, so that routing modes can be compared.
+ */
+public class SearchStatistics {
+    private final RoutingMode mode;
+    private long expandedNodes;
+    private long relaxedEdges;
+    private long heapInserts;
+    private long heapDecreaseKeys;
+    private long heapPolls;
+    private long labelsCreated;
+    private long labelsPruned;
+
+    /**
+     * Constructs empty statistics for a search in the given mode.
+     *
+     * @param mode the routing mode of the search
+     */
+    public SearchStatistics(RoutingMode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Records that an airport was taken from the queue and its connections examined.
+     */
+    void countExpansion() {
+        expandedNodes++;
+    }
+
+    /**
+     * Records that a connection was examined.
+     */
+    void countRelaxation() {
+        relaxedEdges++;
+    }
+
+    /**
+     * Adds work counted elsewhere, such as by one side of a bidirectional search.
+     *
+     * @param expansions  the number of airports expanded
+     * @param relaxations the number of connections examined
+     */
+    void addWork(long expansions, long relaxations) {
+        expandedNodes += expansions;
+        relaxedEdges += relaxations;
+    }
+
+    /**
+     * Adds the operation counts of a heap used by the search.
+     *
+     * @param heap the heap to take the counts from
+     */
+    void addHeapCounts(IndexedMinHeap heap) {
+        heapInserts += heap.getInsertCount();
+        heapDecreaseKeys += heap.getDecreaseKeyCount();
+        heapPolls += heap.getPollCount();
+    }
+
+    /**
+     * Adds the label counts of a search over airport and fuel states.
+     *
+     * @param created the number of labels created
+     * @param pruned  the number of labels pruned as dominated
+     */
+    void addLabels(long created, long pruned) {
+        labelsCreated += created;
+        labelsPruned += pruned;
+    }
+
+    /**
+     * Returns the routing mode of the search.
+     *
+     * @return the routing mode
+     */
+    public RoutingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of airports expanded.
+     *
+     * @return the expansion count
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * Returns the number of connections examined.
+     *
+     * @return the relaxation count
+     */
+    public long getRelaxedEdges() {
+        return relaxedEdges;
+    }
+
+    /**
+     * Returns the number of heap inserts.
+     *
+     * @return the insert count
+     */
+    public long getHeapInserts() {
+        return heapInserts;
+    }
+
+    /**
+     * Returns the number of heap keys lowered in place.
+     *
+     * @return the decrease-key count
+     */
+    public long getHeapDecreaseKeys() {
+        return heapDecreaseKeys;
+    }
+
+    /**
+     * Returns the number of heap polls.
+     *
+     * @return the poll count
+     */
+    public long getHeapPolls() {
+        return heapPolls;
+    }
+
+    /**
+     * Returns the number of (airport, fuel level) labels created.
+     *
+     * @return the label count
+     */
+    public long getLabelsCreated() {
+        return labelsCreated;
+    }
+
+    /**
+     * Returns the number of (airport, fuel level) labels pruned because another label
+     * at the same airport was at least as short with at least as much fuel.
+     *
+     * @return the pruned label count
+     */
+    public long getLabelsPruned() {
+        return labelsPruned;
+    }
+
+    /**
+     * Returns a one line summary of the statistics.
+     *
+     * @return the statistics in a readable format
+     */
+    public String displayInfo() {
+        return "Mode: " + mode +
+                ", Airports expanded: " + expandedNodes +
+                ", Connections examined: " + relaxedEdges +
+                ", Heap inserts: " + heapInserts +
+                ", Decrease-keys: " + heapDecreaseKeys +
+                ", Polls: " + heapPolls +
+                ", Labels created: " + labelsCreated +
+                ", Labels pruned: " + labelsPruned;
+    }
+}
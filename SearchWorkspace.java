@@ -0,0 +1,293 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The arrays a FuelLabelSearch, or one side of a BidirectionalRouteSearch, works in, kept
+ * between searches so that a search in the steady state allocates nothing but the route
+ * it returns.
+ * <p>
+ * Instead of filling every array before each search, every slot carries the generation
+ * of the search that last wrote it. Starting a search only increments the generation,
+ * and a slot whose generation is older reads as empty, so resetting costs nothing and
+ * a search only ever touches the slots it uses. The heap is emptied in O(ids left in it).
+ * <p>
+ * Workspaces are borrowed with acquire and handed back with release. A released workspace
+ * is reused by the next search on any thread, so each thread that runs searches ends up
+ * reusing the same few workspaces, whether it is a pool thread or a short-lived task.
+ * The pool keeps about two workspaces per processor, as a bidirectional search holds two,
+ * and never more than MAX_POOLED_BYTES of arrays. A workspace sized for a graph more than
+ * twice as large as the one being searched is dropped instead of reused, so a large batch
+ * does not hold on to its memory for the life of the process.
+ */
+public class SearchWorkspace {
+    private static final int MAX_POOLED = 2 * Runtime.getRuntime().availableProcessors(); // Workspaces kept at most
+    private static final long MAX_POOLED_BYTES = 256L << 20; // Array memory kept in the pool at most
+    private static final int BYTES_PER_STATE = 48; // The per state arrays and the heap
+    private static final int BYTES_PER_AIRPORT = 24;
+    private static final ArrayDeque<SearchWorkspace> POOL = new ArrayDeque<>();
+    private static long pooledBytes; // Guarded by POOL
+
+    private int stateCapacity;
+    private int airportCapacity;
+    private int generation;
+
+    // Per state
+    private double[] distances;
+    private double[] fuel;
+    private int[] previousStates;
+    private double[] legDistances;
+    private int[] stateGenerations;
+
+    // Per airport
+    private int[] settledStates;
+    private double[] remainingEstimates;
+    private int[] settledGenerations;
+    private int[] estimateGenerations;
+    private int[] destinationGenerations;
+
+    IndexedMinHeap queue;
+    final NeighbourRow neighbours = new NeighbourRow();
+    final int[] singleDestination = new int[1]; // Destination list of a one-to-one search
+
+    /**
+     * Constructs a workspace for graphs of up to the given size.
+     *
+     * @param airportCount the number of airport ids
+     * @param fuelLevels   the number of fuel levels per airport
+     */
+    private SearchWorkspace(int airportCount, int fuelLevels) {
+        allocate(airportCount, airportCount * fuelLevels);
+    }
+
+    /**
+     * Borrows a workspace for one search, reusing a released one when possible.
+     *
+     * @param airportCount the number of airport ids of the graph to search
+     * @param fuelLevels   the number of fuel levels per airport
+     * @return a workspace large enough for the search, with a fresh generation
+     */
+    static SearchWorkspace acquire(int airportCount, int fuelLevels) {
+        SearchWorkspace workspace;
+        synchronized (POOL) {
+            workspace = POOL.pollFirst();
+            if (workspace != null) {
+                pooledBytes -= workspace.getBytes();
+            }
+        }
+        if (workspace != null && (workspace.airportCapacity > 2L * airportCount
+                || workspace.stateCapacity > 2L * airportCount * fuelLevels)) {
+            workspace = null; // Sized for a much larger graph, so its memory is given back
+        }
+        if (workspace == null) {
+            workspace = new SearchWorkspace(airportCount, fuelLevels);
+        }
+        workspace.begin(airportCount, airportCount * fuelLevels);
+        return workspace;
+    }
+
+    /**
+     * Hands a workspace back for reuse. The workspace must not be used afterwards.
+     *
+     * @param workspace the workspace to release
+     */
+    static void release(SearchWorkspace workspace) {
+        long bytes = workspace.getBytes();
+        synchronized (POOL) {
+            if (POOL.size() < MAX_POOLED && pooledBytes + bytes <= MAX_POOLED_BYTES) {
+                POOL.offerFirst(workspace); // Most recently used first, while its arrays are still in cache
+                pooledBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * Returns roughly how much memory the arrays of the workspace take.
+     *
+     * @return the size of the arrays in bytes
+     */
+    private long getBytes() {
+        return (long) stateCapacity * BYTES_PER_STATE + (long) airportCapacity * BYTES_PER_AIRPORT;
+    }
+
+    /**
+     * Prepares the workspace for a new search, growing the arrays if the graph is larger
+     * than any searched before.
+     *
+     * @param airportCount the number of airport ids
+     * @param stateCount   the number of (airport, fuel level) states
+     */
+    private void begin(int airportCount, int stateCount) {
+        if (airportCount > airportCapacity || stateCount > stateCapacity) {
+            allocate(Math.max(airportCount, airportCapacity), Math.max(stateCount, stateCapacity));
+        }
+        queue.clear();
+        queue.resetCounts();
+        if (generation == Integer.MAX_VALUE) {
+            // Older generations could be mistaken for the current one after wrapping around
+            Arrays.fill(stateGenerations, 0);
+            Arrays.fill(settledGenerations, 0);
+            Arrays.fill(estimateGenerations, 0);
+            Arrays.fill(destinationGenerations, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    /**
+     * Creates the arrays of the workspace.
+     *
+     * @param airportCount the number of airport ids
+     * @param stateCount   the number of states
+     */
+    private void allocate(int airportCount, int stateCount) {
+        airportCapacity = airportCount;
+        stateCapacity = stateCount;
+        distances = new double[stateCount];
+        fuel = new double[stateCount];
+        previousStates = new int[stateCount];
+        legDistances = new double[stateCount];
+        stateGenerations = new int[stateCount];
+        settledStates = new int[airportCount];
+        remainingEstimates = new double[airportCount];
+        settledGenerations = new int[airportCount];
+        estimateGenerations = new int[airportCount];
+        destinationGenerations = new int[airportCount];
+        queue = new IndexedMinHeap(stateCount);
+        generation = 0;
+    }
+
+    /**
+     * Returns the distance of a state's label.
+     *
+     * @param state the state
+     * @return the distance in knots, or infinity if the state has no label in this search
+     */
+    double getDistance(int state) {
+        return (stateGenerations[state] == generation) ? distances[state] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the fuel of a state's label. Only valid if the state has a label in this search.
+     *
+     * @param state the state
+     * @return the fuel on board in gallons
+     */
+    double getFuel(int state) {
+        return fuel[state];
+    }
+
+    /**
+     * Returns the state a label was reached from. Only valid if the state has a label in
+     * this search.
+     *
+     * @param state the state
+     * @return the previous state, or -1 at the origin
+     */
+    int getPreviousState(int state) {
+        return previousStates[state];
+    }
+
+    /**
+     * Returns the length of the last leg of a label. Only valid if the state has a label in
+     * this search.
+     *
+     * @param state the state
+     * @return the leg length in knots
+     */
+    double getLegDistance(int state) {
+        return legDistances[state];
+    }
+
+    /**
+     * Sets the label of a state.
+     *
+     * @param state         the state
+     * @param distance      the distance from the origin in knots
+     * @param fuelAmount    the fuel on board in gallons
+     * @param previousState the state the label was reached from, or -1 at the origin
+     * @param legDistance   the length of the last leg in knots
+     */
+    void setLabel(int state, double distance, double fuelAmount, int previousState, double legDistance) {
+        distances[state] = distance;
+        fuel[state] = fuelAmount;
+        previousStates[state] = previousState;
+        legDistances[state] = legDistance;
+        stateGenerations[state] = generation;
+    }
+
+    /**
+     * Returns the settled state of a destination airport.
+     *
+     * @param airport the airport id
+     * @return the shortest settled state of the airport, or -1 if none has been settled
+     */
+    int getSettledState(int airport) {
+        return (settledGenerations[airport] == generation) ? settledStates[airport] : -1;
+    }
+
+    /**
+     * Records the shortest settled state of a destination airport.
+     *
+     * @param airport the airport id
+     * @param state   the settled state
+     */
+    void setSettledState(int airport, int state) {
+        settledStates[airport] = state;
+        settledGenerations[airport] = generation;
+    }
+
+    /**
+     * Marks an airport as a destination of this search.
+     *
+     * @param airport the airport id
+     * @return true if the airport was not marked yet
+     */
+    boolean markDestination(int airport) {
+        if (destinationGenerations[airport] == generation) {
+            return false;
+        }
+        destinationGenerations[airport] = generation;
+        return true;
+    }
+
+    /**
+     * Returns whether an airport is a destination of this search.
+     *
+     * @param airport the airport id
+     * @return true if the airport was marked as a destination
+     */
+    boolean isDestination(int airport) {
+        return destinationGenerations[airport] == generation;
+    }
+
+    /**
+     * Returns whether the straight-line estimate of an airport has been stored in this search.
+     *
+     * @param airport the airport id
+     * @return true if getRemainingEstimate can be used
+     */
+    boolean hasRemainingEstimate(int airport) {
+        return estimateGenerations[airport] == generation;
+    }
+
+    /**
+     * Returns the stored straight-line estimate of an airport.
+     *
+     * @param airport the airport id
+     * @return the estimate in knots
+     */
+    double getRemainingEstimate(int airport) {
+        return remainingEstimates[airport];
+    }
+
+    /**
+     * Stores the straight-line estimate from an airport to the destination.
+     *
+     * @param airport  the airport id
+     * @param estimate the estimate in knots
+     */
+    void setRemainingEstimate(int airport, double estimate) {
+        remainingEstimates[airport] = estimate;
+        estimateGenerations[airport] = generation;
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Buckets airport ids into square latitude/longitude cells so that airports within a
+ * given distance of a point can be found without looking at every airport.
+ * The cell size matches the search radius, so all airports within range of a point
+ * lie in the point's own cell or one of the eight cells around it.
+ */
+public class SpatialGrid {
+    private final double cellSize; // Cell size in degrees, 0 when everything shares one cell
+    private final HashMap<Long, Cell> cells;
+
+    /**
+     * Constructs an empty grid for searches up to the given distance.
+     *
+     * @param radius the search radius in knots, which may be infinite
+     */
+    public SpatialGrid(double radius) {
+        double degrees = radius / Edge.KNOT_CONVERSION;
+        // Cells as wide as half the globe gain nothing over a single cell
+        this.cellSize = (Double.isInfinite(degrees) || degrees >= 180) ? 0 : Math.max(degrees, 1e-6);
+        this.cells = new HashMap<>();
+    }
+
+    /**
+     * Adds an id to the cell containing the given coordinates.
+     *
+     * @param id        the airport id
+     * @param latitude  the latitude of the airport
+     * @param longitude the longitude of the airport
+     */
+    public void add(int id, double latitude, double longitude) {
+        cells.computeIfAbsent(cellKey(cellIndex(latitude), cellIndex(longitude)), key -> new Cell()).add(id);
+    }
+
+    /**
+     * Removes an id from the cell containing the given coordinates.
+     *
+     * @param id        the airport id
+     * @param latitude  the latitude the airport was added with
+     * @param longitude the longitude the airport was added with
+     */
+    public void remove(int id, double latitude, double longitude) {
+        long key = cellKey(cellIndex(latitude), cellIndex(longitude));
+        Cell cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(id);
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids in the cell containing the given coordinates and in the eight
+     * cells around it. The caller still has to check the actual distance of each id.
+     *
+     * @param latitude  the latitude of the search point
+     * @param longitude the longitude of the search point
+     * @return the candidate ids
+     */
+    public int[] getCandidates(double latitude, double longitude) {
+        if (cellSize == 0) {
+            Cell cell = cells.get(0L);
+            return (cell == null) ? new int[0] : Arrays.copyOf(cell.ids, cell.size);
+        }
+
+        long row = cellIndex(latitude);
+        long column = cellIndex(longitude);
+        int[] candidates = new int[0];
+        int count = 0;
+        for (long r = row - 1; r <= row + 1; r++) {
+            for (long c = column - 1; c <= column + 1; c++) {
+                Cell cell = cells.get(cellKey(r, c));
+                if (cell == null) {
+                    continue;
+                }
+                if (count + cell.size > candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(count + cell.size, candidates.length * 2));
+                }
+                System.arraycopy(cell.ids, 0, candidates, count, cell.size);
+                count += cell.size;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Returns the row or column index of the cell containing a coordinate.
+     *
+     * @param degrees the latitude or longitude
+     * @return the cell index along that axis
+     */
+    private long cellIndex(double degrees) {
+        return (cellSize == 0) ? 0 : (long) Math.floor(degrees / cellSize);
+    }
+
+    /**
+     * Combines a row and column index into a single map key.
+     *
+     * @param row    the row index
+     * @param column the column index
+     * @return the key of the cell
+     */
+    private long cellKey(long row, long column) {
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A growable list of the ids that fall into one cell.
+     */
+    private static class Cell {
+        private int[] ids = new int[8];
+        private int size;
+
+        /**
+         * Adds an id to the cell.
+         *
+         * @param id the airport id
+         */
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * Removes an id from the cell, keeping the order of the remaining ids.
+         *
+         * @param id the airport id
+         */
+        private void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+}